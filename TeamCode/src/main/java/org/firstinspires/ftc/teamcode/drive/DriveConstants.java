@@ -69,6 +69,14 @@ public class DriveConstants {
     public static double MAX_ANG_VEL = Math.toRadians(60);
     public static double MAX_ANG_ACCEL = Math.toRadians(60);
 
+    /*
+     * Set USE_ASYNC_IMU to true to read the IMU on a background thread at IMU_SAMPLE_RATE (Hz)
+     * instead of synchronously inside the control loop. The drive then uses the most recent sample,
+     * which may be up to one sample period old.
+     */
+    public static boolean USE_ASYNC_IMU = false;
+    public static double IMU_SAMPLE_RATE = 100;
+
 
     public static double encoderTicksToInches(double ticks) {
         return WHEEL_RADIUS * 2 * Math.PI * GEAR_RATIO * ticks / TICKS_PER_REV;
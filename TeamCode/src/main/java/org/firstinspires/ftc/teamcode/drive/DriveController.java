@@ -0,0 +1,343 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+import org.firstinspires.ftc.teamcode.util.LatencyHistogram;
+import org.firstinspires.ftc.teamcode.util.PosePublisher;
+import org.firstinspires.ftc.teamcode.util.PoseRecord;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs {@link SampleMecanumDrive#update()} on a dedicated high-priority thread at a fixed rate
+ * (LOOP_FREQUENCY), so the loop rate no longer depends on what the op mode thread does:
+ * <pre>
+ *   DriveController controller = new DriveController(drive);
+ *   controller.start();
+ *   controller.followTrajectorySequenceAsync(sequence);
+ *   while (opModeIsActive() && controller.isBusy()) {
+ *       controller.getState(state);
+ *       // other op mode work
+ *   }
+ *   controller.stop();
+ * </pre>
+ * Once started, the controller thread owns the drive: the op mode thread must only talk to it
+ * through the controller. Commands are queued and applied at the start of the next cycle, and the
+ * drive state is published after every cycle as a consistent snapshot.
+ *
+ * Each cycle has a deadline one period after the previous one. A cycle that starts after its
+ * deadline counts as an overrun and the schedule restarts from the current time rather than
+ * running the missed cycles back to back. How late each cycle started is recorded in a histogram.
+ *
+ * The controller stops (and stops the drive) on its own once the thread that created it
+ * terminates. An exception thrown on the controller thread (e.g., by a marker callback) stops it
+ * and is rethrown on the op mode thread by the next call to the controller.
+ */
+@Config
+public class DriveController implements Runnable {
+    public static double LOOP_FREQUENCY = 100; // Hz
+    public static int LATENESS_WINDOW = 1000; // cycles
+
+    /**
+     * Copy of the drive state published after a cycle.
+     */
+    public static class State {
+        public double x, y, heading; // in, in, rad
+        public double xVelocity, yVelocity, headingVelocity; // in/s, in/s, rad/s
+        public double xError, yError, headingError; // robot frame
+        public boolean busy;
+        public long timestampNanos; // System.nanoTime() at the end of the cycle
+
+        public Pose2d getPose() {
+            return new Pose2d(x, y, heading);
+        }
+
+        public Pose2d getVelocity() {
+            return new Pose2d(xVelocity, yVelocity, headingVelocity);
+        }
+
+        public Pose2d getError() {
+            return new Pose2d(xError, yError, headingError);
+        }
+    }
+
+    private final SampleMecanumDrive drive;
+    private final long periodNanos;
+    private final Thread owner;
+    private final Thread thread;
+
+    private volatile boolean running;
+    private volatile RuntimeException failure;
+
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    // follow commands that were submitted but haven't been published as busy yet
+    private final AtomicInteger pendingFollows = new AtomicInteger();
+
+    // guarded by itself
+    private final State state = new State();
+
+    // guarded by itself
+    private final LatencyHistogram latenessHistogram = new LatencyHistogram(LATENESS_WINDOW);
+    private volatile long cycleCount;
+    private volatile long overrunCount;
+
+    public DriveController(SampleMecanumDrive drive, double frequency) {
+        this.drive = drive;
+        this.periodNanos = (long) (1e9 / frequency);
+        this.owner = Thread.currentThread();
+
+        thread = new Thread(this, "DriveController");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    public DriveController(SampleMecanumDrive drive) {
+        this(drive, LOOP_FREQUENCY);
+    }
+
+    public void start() {
+        publishState();
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the controller thread and the drive and waits for the thread to exit. The drive may be
+     * used directly on the calling thread afterwards.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long deadline = System.nanoTime();
+            while (running && owner.isAlive()) {
+                long now = System.nanoTime();
+                long lateness = now - deadline;
+                if (lateness > periodNanos) {
+                    // missed at least one whole cycle; don't try to catch up
+                    overrunCount++;
+                    deadline = now;
+                }
+                synchronized (latenessHistogram) {
+                    latenessHistogram.record(Math.max(0, lateness));
+                }
+
+                runCycle();
+                cycleCount++;
+
+                deadline += periodNanos;
+                long sleepNanos = deadline - System.nanoTime();
+                if (sleepNanos > 0) {
+                    LockSupport.parkNanos(sleepNanos);
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            running = false;
+            drive.setMotorPowers(0, 0, 0, 0);
+        }
+    }
+
+    private void runCycle() {
+        int follows = 0;
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            if (command instanceof FollowCommand) {
+                follows++;
+            }
+        }
+
+        drive.update();
+
+        publishState();
+        pendingFollows.addAndGet(-follows);
+    }
+
+    private void publishState() {
+        Pose2d pose = drive.getPoseEstimate();
+        Pose2d velocity = drive.getPoseVelocity();
+        Pose2d error = drive.getLastError();
+        boolean busy = drive.isBusy();
+
+        synchronized (state) {
+            state.x = pose.getX();
+            state.y = pose.getY();
+            state.heading = pose.getHeading();
+            if (velocity != null) {
+                state.xVelocity = velocity.getX();
+                state.yVelocity = velocity.getY();
+                state.headingVelocity = velocity.getHeading();
+            }
+            state.xError = error.getX();
+            state.yError = error.getY();
+            state.headingError = error.getHeading();
+            state.busy = busy;
+            state.timestampNanos = System.nanoTime();
+        }
+    }
+
+    private void checkFailure() {
+        RuntimeException e = failure;
+        if (e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    private static class FollowCommand implements Runnable {
+        private final Runnable command;
+
+        FollowCommand(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            command.run();
+        }
+    }
+
+    /**
+     * Runs {@code command} on the controller thread at the start of the next cycle, where it may
+     * use the drive freely (e.g., to change modes or motor settings).
+     */
+    public void submit(Runnable command) {
+        checkFailure();
+        commands.add(command);
+    }
+
+    private void submitFollow(Runnable command) {
+        checkFailure();
+        pendingFollows.incrementAndGet();
+        commands.add(new FollowCommand(command));
+    }
+
+    public void followTrajectorySequenceAsync(TrajectorySequence trajectorySequence) {
+        submitFollow(() -> drive.followTrajectorySequenceAsync(trajectorySequence));
+    }
+
+    public void followTrajectoryAsync(Trajectory trajectory) {
+        submitFollow(() -> drive.followTrajectoryAsync(trajectory));
+    }
+
+    public void turnAsync(double angle) {
+        submitFollow(() -> drive.turnAsync(angle));
+    }
+
+    public void setPoseEstimate(Pose2d poseEstimate) {
+        submit(() -> drive.setPoseEstimate(poseEstimate));
+    }
+
+    public void setWeightedDrivePower(Pose2d drivePower) {
+        submit(() -> drive.setWeightedDrivePower(drivePower));
+    }
+
+    /**
+     * True while a submitted trajectory, sequence, or turn hasn't finished.
+     */
+    public boolean isBusy() {
+        checkFailure();
+        if (pendingFollows.get() > 0) {
+            return true;
+        }
+        synchronized (state) {
+            return state.busy;
+        }
+    }
+
+    /**
+     * Waits until the drive is idle (or the calling thread is interrupted).
+     */
+    public void waitForIdle() {
+        while (!Thread.currentThread().isInterrupted() && running && isBusy()) {
+            LockSupport.parkNanos(periodNanos);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Copies the state published after the most recent cycle into {@code out}.
+     */
+    public void getState(State out) {
+        checkFailure();
+        synchronized (state) {
+            out.x = state.x;
+            out.y = state.y;
+            out.heading = state.heading;
+            out.xVelocity = state.xVelocity;
+            out.yVelocity = state.yVelocity;
+            out.headingVelocity = state.headingVelocity;
+            out.xError = state.xError;
+            out.yError = state.yError;
+            out.headingError = state.headingError;
+            out.busy = state.busy;
+            out.timestampNanos = state.timestampNanos;
+        }
+    }
+
+    /**
+     * Pose estimate of the most recent cycle; doesn't lock (see {@link PosePublisher}).
+     */
+    public Pose2d getPoseEstimate() {
+        checkFailure();
+        return drive.getPoseRecord().getPose();
+    }
+
+    public PoseRecord getPoseRecord() {
+        checkFailure();
+        return drive.getPoseRecord();
+    }
+
+    /**
+     * Copies the pose estimate of the most recent cycle into {@code out} without allocating (see
+     * {@link SampleMecanumDrive#getPoseRecord(double[])}).
+     */
+    public long getPoseRecord(double[] out) {
+        checkFailure();
+        return drive.getPoseRecord(out);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * Number of cycles that started more than a period late.
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * Percentile of how late cycles started relative to their deadline in nanoseconds.
+     */
+    public long getLatenessPercentile(double fraction) {
+        synchronized (latenessHistogram) {
+            return latenessHistogram.getPercentile(fraction);
+        }
+    }
+
+    /**
+     * Maximum lateness of a cycle in nanoseconds.
+     */
+    public long getMaxLateness() {
+        synchronized (latenessHistogram) {
+            return latenessHistogram.getMax();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.util.KinematicsUtil;
+import org.firstinspires.ftc.teamcode.util.Mat3;
+
+/*
+ * Extended Kalman filter localizer that fuses the tracking wheels, the drive encoders, and the IMU
+ * instead of trusting only one of them. The state is the field pose (x, y, heading) with a 3x3
+ * covariance:
+ *   - predict: the robot-relative deltas of the tracking wheels and the drive encoders are combined
+ *     per axis, weighted by their variances (which grow with the distance moved). If they disagree
+ *     by more than SLIP_GATE standard deviations on an axis, the drive wheels are assumed to have
+ *     slipped and only the tracking wheels are used for that axis.
+ *   - update: the IMU heading is applied as a scalar measurement every cycle, and absolute fixes
+ *     (e.g., from vision) can be applied with addAbsoluteFix().
+ * The velocity estimate is the tracking wheel velocity with the IMU heading rate, if available.
+ *
+ * All math runs on preallocated arrays (see Mat3), so update() doesn't allocate. The wheel sources
+ * are existing PrimitiveWheelLocalizers, which are only used to read and convert wheel values; their
+ * own pose estimates aren't updated. To use it:
+ *   setLocalizer(new FusionLocalizer(this, new StandardTrackingWheelLocalizer(hardwareMap)));
+ */
+@Config
+public class FusionLocalizer implements Localizer {
+    // variance added per inch (or radian) moved along each axis
+    public static double TRACKING_WHEEL_TRANSLATION_NOISE = 0.002; // in^2/in
+    public static double TRACKING_WHEEL_HEADING_NOISE = 0.0005; // rad^2/rad
+    public static double DRIVE_ENCODER_TRANSLATION_NOISE = 0.02; // in^2/in
+    public static double DRIVE_ENCODER_HEADING_NOISE = 0.005; // rad^2/rad
+    public static double MIN_VARIANCE = 1e-9;
+
+    public static double IMU_HEADING_VARIANCE = 1e-4; // rad^2
+    public static double SLIP_GATE = 3.0; // standard deviations
+
+    public static boolean USE_DRIVE_ENCODERS = true;
+    public static boolean USE_IMU = true;
+
+    private final SampleMecanumDrive drive;
+    private final PrimitiveWheelLocalizer trackingWheels;
+
+    private final WheelSource trackingWheelSource;
+    private final WheelSource driveWheelSource;
+
+    private final double[] wheelVelocities;
+    private final double[] pose = new double[3];
+    private final double[] velocity = new double[3];
+    private final double[] covariance = new double[9];
+
+    // fused robot-relative delta and its variances
+    private final double[] delta = new double[3];
+    private final double[] deltaVariance = new double[3];
+
+    // scratch matrices
+    private final double[] jacobian = new double[9];
+    private final double[] rotation = new double[9];
+    private final double[] noise = new double[9];
+    private final double[] temp = new double[9];
+    private final double[] temp2 = new double[9];
+    private final double[] gain = new double[9];
+
+    private boolean hasVelocity;
+    private int slipCount;
+
+    private Pose2d poseEstimate;
+    private Pose2d poseVelocity;
+
+    /**
+     * Reads the wheels of a PrimitiveWheelLocalizer and converts them to robot-relative deltas.
+     */
+    private static class WheelSource {
+        final PrimitiveWheelLocalizer localizer;
+        final double[] positions;
+        final double[] lastPositions;
+        final double[] deltas;
+        final double[] robotDelta = new double[3];
+        boolean hasLastPositions;
+
+        WheelSource(PrimitiveWheelLocalizer localizer) {
+            this.localizer = localizer;
+            positions = new double[localizer.getWheelCount()];
+            lastPositions = new double[localizer.getWheelCount()];
+            deltas = new double[localizer.getWheelCount()];
+        }
+
+        /**
+         * @return false on the first read (no delta yet)
+         */
+        boolean read() {
+            localizer.getWheelPositions(positions);
+            boolean hasDelta = hasLastPositions;
+            if (hasDelta) {
+                for (int i = 0; i < positions.length; i++) {
+                    deltas[i] = positions[i] - lastPositions[i];
+                }
+                localizer.wheelToRobot(deltas, robotDelta);
+            }
+            System.arraycopy(positions, 0, lastPositions, 0, positions.length);
+            hasLastPositions = true;
+            return hasDelta;
+        }
+    }
+
+    public FusionLocalizer(SampleMecanumDrive drive, PrimitiveWheelLocalizer trackingWheels) {
+        this.drive = drive;
+        this.trackingWheels = trackingWheels;
+
+        trackingWheelSource = new WheelSource(trackingWheels);
+        driveWheelSource = new WheelSource(new MecanumWheelLocalizer(drive, false));
+        wheelVelocities = new double[trackingWheels.getWheelCount()];
+    }
+
+    @Override
+    public void update() {
+        boolean hasTrackingDelta = trackingWheelSource.read();
+        boolean hasDriveDelta = driveWheelSource.read() && USE_DRIVE_ENCODERS;
+
+        if (hasTrackingDelta) {
+            fuseDeltas(hasDriveDelta);
+            predict();
+        }
+
+        if (USE_IMU) {
+            double heading = drive.getExternalHeading();
+            if (!Double.isNaN(heading)) {
+                updateHeading(heading, IMU_HEADING_VARIANCE);
+            }
+        }
+
+        hasVelocity = trackingWheels.getWheelVelocities(wheelVelocities);
+        if (hasVelocity) {
+            trackingWheels.wheelToRobot(wheelVelocities, velocity);
+
+            double headingVelocity = USE_IMU ? drive.getRawExternalHeadingVelocity() : Double.NaN;
+            if (!Double.isNaN(headingVelocity)) {
+                velocity[2] = headingVelocity;
+            }
+        }
+
+        poseEstimate = null;
+        poseVelocity = null;
+    }
+
+    private void fuseDeltas(boolean hasDriveDelta) {
+        double[] tracking = trackingWheelSource.robotDelta;
+        double[] driveDelta = driveWheelSource.robotDelta;
+
+        for (int i = 0; i < 3; i++) {
+            boolean heading = i == 2;
+            double trackingVariance = MIN_VARIANCE + Math.abs(tracking[i])
+                    * (heading ? TRACKING_WHEEL_HEADING_NOISE : TRACKING_WHEEL_TRANSLATION_NOISE);
+
+            if (!hasDriveDelta) {
+                delta[i] = tracking[i];
+                deltaVariance[i] = trackingVariance;
+                continue;
+            }
+
+            double driveVariance = MIN_VARIANCE + Math.abs(driveDelta[i])
+                    * (heading ? DRIVE_ENCODER_HEADING_NOISE : DRIVE_ENCODER_TRANSLATION_NOISE);
+
+            double difference = tracking[i] - driveDelta[i];
+            double totalVariance = trackingVariance + driveVariance;
+            if (difference * difference > SLIP_GATE * SLIP_GATE * totalVariance) {
+                // the drive wheels slipped (or a dead wheel lost contact); trust the tracking wheels
+                slipCount++;
+                delta[i] = tracking[i];
+                deltaVariance[i] = trackingVariance;
+            } else {
+                delta[i] = (tracking[i] * driveVariance + driveDelta[i] * trackingVariance) / totalVariance;
+                deltaVariance[i] = trackingVariance * driveVariance / totalVariance;
+            }
+        }
+    }
+
+    private void predict() {
+        double cos = Math.cos(pose[2]);
+        double sin = Math.sin(pose[2]);
+        double fieldDx = cos * delta[0] - sin * delta[1];
+        double fieldDy = sin * delta[0] + cos * delta[1];
+
+        KinematicsUtil.relativeOdometryUpdate(pose, delta[0], delta[1], delta[2]);
+
+        // P = F P F^T + G Q G^T with F the Jacobian of the motion with respect to the pose and G
+        // the rotation of the robot-relative delta into the field frame
+        Mat3.setIdentity(jacobian);
+        jacobian[2] = -fieldDy;
+        jacobian[5] = fieldDx;
+
+        Mat3.setIdentity(rotation);
+        rotation[0] = cos;
+        rotation[1] = -sin;
+        rotation[3] = sin;
+        rotation[4] = cos;
+
+        Mat3.setDiagonal(noise, deltaVariance[0], deltaVariance[1], deltaVariance[2]);
+
+        Mat3.multiply(jacobian, covariance, temp);
+        Mat3.multiplyTransposed(temp, jacobian, covariance);
+        Mat3.multiply(rotation, noise, temp);
+        Mat3.multiplyTransposed(temp, rotation, temp2);
+        Mat3.add(covariance, temp2, covariance);
+        Mat3.symmetrize(covariance);
+    }
+
+    private void updateHeading(double heading, double variance) {
+        double innovationVariance = covariance[8] + variance;
+        double k0 = covariance[2] / innovationVariance;
+        double k1 = covariance[5] / innovationVariance;
+        double k2 = covariance[8] / innovationVariance;
+
+        double innovation = Angle.normDelta(heading - pose[2]);
+        pose[0] += k0 * innovation;
+        pose[1] += k1 * innovation;
+        pose[2] = Angle.norm(pose[2] + k2 * innovation);
+
+        // P = (I - K H) P with H = [0 0 1]
+        double p20 = covariance[6], p21 = covariance[7], p22 = covariance[8];
+        covariance[0] -= k0 * p20;
+        covariance[1] -= k0 * p21;
+        covariance[2] -= k0 * p22;
+        covariance[3] -= k1 * p20;
+        covariance[4] -= k1 * p21;
+        covariance[5] -= k1 * p22;
+        covariance[6] -= k2 * p20;
+        covariance[7] -= k2 * p21;
+        covariance[8] -= k2 * p22;
+        Mat3.symmetrize(covariance);
+    }
+
+    /**
+     * Applies an absolute measurement of the full pose (e.g., from a vision target) with the given
+     * variances. Call this on the thread that calls update().
+     */
+    public void addAbsoluteFix(Pose2d measuredPose, double translationVariance, double headingVariance) {
+        // S = P + R, K = P S^-1
+        System.arraycopy(covariance, 0, temp, 0, 9);
+        temp[0] += translationVariance;
+        temp[4] += translationVariance;
+        temp[8] += headingVariance;
+        if (!Mat3.invert(temp, temp2)) {
+            return;
+        }
+        Mat3.multiply(covariance, temp2, gain);
+
+        double e0 = measuredPose.getX() - pose[0];
+        double e1 = measuredPose.getY() - pose[1];
+        double e2 = Angle.normDelta(measuredPose.getHeading() - pose[2]);
+        pose[0] += gain[0] * e0 + gain[1] * e1 + gain[2] * e2;
+        pose[1] += gain[3] * e0 + gain[4] * e1 + gain[5] * e2;
+        pose[2] = Angle.norm(pose[2] + gain[6] * e0 + gain[7] * e1 + gain[8] * e2);
+
+        // P = (I - K) P
+        Mat3.multiply(gain, covariance, temp);
+        for (int i = 0; i < 9; i++) {
+            covariance[i] -= temp[i];
+        }
+        Mat3.symmetrize(covariance);
+
+        poseEstimate = null;
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (poseEstimate == null) {
+            poseEstimate = new Pose2d(pose[0], pose[1], pose[2]);
+        }
+        return poseEstimate;
+    }
+
+    /**
+     * Resets the pose (and zeroes its uncertainty); the IMU heading is re-zeroed to match.
+     */
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d poseEstimate) {
+        pose[0] = poseEstimate.getX();
+        pose[1] = poseEstimate.getY();
+        pose[2] = poseEstimate.getHeading();
+        for (int i = 0; i < 9; i++) {
+            covariance[i] = 0.0;
+        }
+
+        trackingWheelSource.hasLastPositions = false;
+        driveWheelSource.hasLastPositions = false;
+
+        drive.setExternalHeading(poseEstimate.getHeading());
+
+        this.poseEstimate = poseEstimate;
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        if (!hasVelocity) {
+            return null;
+        }
+        if (poseVelocity == null) {
+            poseVelocity = new Pose2d(velocity[0], velocity[1], velocity[2]);
+        }
+        return poseVelocity;
+    }
+
+    /**
+     * Copies the pose covariance (row-major 3x3 over x, y, heading) into {@code covariance}.
+     */
+    public void getCovariance(double[] covariance) {
+        System.arraycopy(this.covariance, 0, covariance, 0, 9);
+    }
+
+    /**
+     * Number of axis updates where the drive encoders were rejected as slipping.
+     */
+    public int getSlipCount() {
+        return slipCount;
+    }
+}
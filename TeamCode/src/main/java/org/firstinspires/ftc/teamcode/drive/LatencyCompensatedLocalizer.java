@@ -0,0 +1,251 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.acmerobotics.roadrunner.util.Angle;
+
+/*
+ * Localizer wrapper that applies delayed absolute pose measurements (e.g., Vuforia navigation
+ * targets, which arrive tens of milliseconds after the frame was captured) without making the pose
+ * jump back in time. Every cycle, the robot-relative motion reported by the wrapped localizer is
+ * stored with the hardware snapshot timestamp in a ring buffer along with the resulting pose. When a
+ * fix arrives, the pose at its capture time is corrected toward it and the motion since then is
+ * replayed on top of the corrected pose.
+ *
+ * Fixes can be submitted from any thread with addVisionFix(); they are applied by the next update()
+ * (if several arrive in between, only the latest is used). Nothing is allocated per cycle except
+ * the Pose2d returned by getPoseEstimate(), and only when the pose changed. To use it:
+ *   setLocalizer(new LatencyCompensatedLocalizer(this, new StandardTrackingWheelLocalizer(hardwareMap)));
+ * and, for a Vuforia robot location (in mm) captured at frameNanos (System.nanoTime() base):
+ *   VectorF t = location.getTranslation();
+ *   double heading = Orientation.getOrientation(location, EXTRINSIC, XYZ, RADIANS).thirdAngle;
+ *   localizer.addVisionFix(new Pose2d(t.get(0) / mmPerInch, t.get(1) / mmPerInch, heading), frameNanos);
+ */
+@Config
+public class LatencyCompensatedLocalizer implements Localizer {
+    public static int HISTORY_SIZE = 128; // cycles; fixes older than the history are rejected
+
+    // fraction of the difference between the fix and the historical pose that is corrected
+    public static double TRANSLATION_GAIN = 1.0;
+    public static double HEADING_GAIN = 1.0;
+
+    private final SampleMecanumDrive drive;
+    private final Localizer localizer;
+
+    // ring buffer of robot-relative deltas and the poses after applying them
+    private final long[] timestamps;
+    private final double[] dxs, dys, dheadings;
+    private final double[] xs, ys, headings;
+    private int head;
+    private int size;
+
+    private final double[] localizerPose = new double[3];
+    private final double[] lastLocalizerPose = new double[3];
+    private boolean hasLastLocalizerPose;
+
+    private final double[] pose = new double[3];
+    private Pose2d poseEstimate;
+
+    // guarded by itself
+    private final double[] pendingFix = new double[3];
+    private long pendingFixNanos;
+    private boolean hasPendingFix;
+
+    private int appliedFixCount;
+    private int rejectedFixCount;
+
+    public LatencyCompensatedLocalizer(SampleMecanumDrive drive, Localizer localizer) {
+        this.drive = drive;
+        this.localizer = localizer;
+
+        int capacity = Math.max(2, HISTORY_SIZE);
+        timestamps = new long[capacity];
+        dxs = new double[capacity];
+        dys = new double[capacity];
+        dheadings = new double[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+        headings = new double[capacity];
+    }
+
+    public Localizer getLocalizer() {
+        return localizer;
+    }
+
+    private void readLocalizerPose() {
+        if (localizer instanceof PrimitiveWheelLocalizer) {
+            ((PrimitiveWheelLocalizer) localizer).getPoseEstimate(localizerPose);
+        } else {
+            Pose2d localizerPoseEstimate = localizer.getPoseEstimate();
+            localizerPose[0] = localizerPoseEstimate.getX();
+            localizerPose[1] = localizerPoseEstimate.getY();
+            localizerPose[2] = localizerPoseEstimate.getHeading();
+        }
+    }
+
+    @Override
+    public void update() {
+        localizer.update();
+        readLocalizerPose();
+
+        // motion since the last cycle in the frame of the last pose: last^-1 * current
+        double dx = 0, dy = 0, dheading = 0;
+        if (hasLastLocalizerPose) {
+            double fieldDx = localizerPose[0] - lastLocalizerPose[0];
+            double fieldDy = localizerPose[1] - lastLocalizerPose[1];
+            double cos = Math.cos(lastLocalizerPose[2]);
+            double sin = Math.sin(lastLocalizerPose[2]);
+            dx = cos * fieldDx + sin * fieldDy;
+            dy = -sin * fieldDx + cos * fieldDy;
+            dheading = Angle.normDelta(localizerPose[2] - lastLocalizerPose[2]);
+        }
+        System.arraycopy(localizerPose, 0, lastLocalizerPose, 0, 3);
+        hasLastLocalizerPose = true;
+
+        compose(pose, dx, dy, dheading);
+        record(drive.getHardwareSnapshot().getTimestampNanos(), dx, dy, dheading);
+
+        applyPendingFix();
+
+        poseEstimate = null;
+    }
+
+    /**
+     * pose = pose * delta
+     */
+    private static void compose(double[] pose, double dx, double dy, double dheading) {
+        double cos = Math.cos(pose[2]);
+        double sin = Math.sin(pose[2]);
+        pose[0] += cos * dx - sin * dy;
+        pose[1] += sin * dx + cos * dy;
+        pose[2] = Angle.norm(pose[2] + dheading);
+    }
+
+    private void record(long timestampNanos, double dx, double dy, double dheading) {
+        if (size == timestamps.length) {
+            head = (head + 1) % timestamps.length;
+            size--;
+        }
+        int index = (head + size) % timestamps.length;
+        timestamps[index] = timestampNanos;
+        dxs[index] = dx;
+        dys[index] = dy;
+        dheadings[index] = dheading;
+        xs[index] = pose[0];
+        ys[index] = pose[1];
+        headings[index] = pose[2];
+        size++;
+    }
+
+    private void applyPendingFix() {
+        double x, y, heading;
+        long captureNanos;
+        synchronized (pendingFix) {
+            if (!hasPendingFix) {
+                return;
+            }
+            hasPendingFix = false;
+            x = pendingFix[0];
+            y = pendingFix[1];
+            heading = pendingFix[2];
+            captureNanos = pendingFixNanos;
+        }
+
+        // newest cycle at or before the capture time
+        int i = size - 1;
+        while (i >= 0 && timestamps[(head + i) % timestamps.length] > captureNanos) {
+            i--;
+        }
+        if (i < 0) {
+            rejectedFixCount++;
+            return;
+        }
+
+        int index = (head + i) % timestamps.length;
+        pose[0] = xs[index] + TRANSLATION_GAIN * (x - xs[index]);
+        pose[1] = ys[index] + TRANSLATION_GAIN * (y - ys[index]);
+        pose[2] = Angle.norm(headings[index] + HEADING_GAIN * Angle.normDelta(heading - headings[index]));
+        xs[index] = pose[0];
+        ys[index] = pose[1];
+        headings[index] = pose[2];
+
+        // replay the motion after the capture on top of the corrected pose
+        for (i++; i < size; i++) {
+            index = (head + i) % timestamps.length;
+            compose(pose, dxs[index], dys[index], dheadings[index]);
+            xs[index] = pose[0];
+            ys[index] = pose[1];
+            headings[index] = pose[2];
+        }
+
+        appliedFixCount++;
+    }
+
+    /**
+     * Submits an absolute pose measurement taken at {@code captureNanos} (System.nanoTime() base);
+     * it's applied by the next update(). May be called from any thread.
+     */
+    public void addVisionFix(Pose2d measuredPose, long captureNanos) {
+        synchronized (pendingFix) {
+            pendingFix[0] = measuredPose.getX();
+            pendingFix[1] = measuredPose.getY();
+            pendingFix[2] = measuredPose.getHeading();
+            pendingFixNanos = captureNanos;
+            hasPendingFix = true;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (poseEstimate == null) {
+            poseEstimate = new Pose2d(pose[0], pose[1], pose[2]);
+        }
+        return poseEstimate;
+    }
+
+    /**
+     * Resets the pose and clears the history; a fix that hasn't been applied yet is dropped.
+     */
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d poseEstimate) {
+        localizer.setPoseEstimate(poseEstimate);
+
+        pose[0] = poseEstimate.getX();
+        pose[1] = poseEstimate.getY();
+        pose[2] = poseEstimate.getHeading();
+
+        head = 0;
+        size = 0;
+        hasLastLocalizerPose = false;
+        synchronized (pendingFix) {
+            hasPendingFix = false;
+        }
+
+        this.poseEstimate = poseEstimate;
+    }
+
+    /**
+     * Robot-relative velocity of the wrapped localizer (unaffected by fixes).
+     */
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        return localizer.getPoseVelocity();
+    }
+
+    public int getAppliedFixCount() {
+        return appliedFixCount;
+    }
+
+    /**
+     * Number of fixes that were older than the history.
+     */
+    public int getRejectedFixCount() {
+        return rejectedFixCount;
+    }
+}
@@ -0,0 +1,62 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+/*
+ * Drive encoder localizer for SampleMecanumDrive built on the primitive wheel state API. This is a
+ * drop-in replacement for Road Runner's MecanumDrive.MecanumLocalizer that reads wheel positions
+ * and velocities into preallocated arrays instead of boxed lists.
+ */
+public class MecanumWheelLocalizer extends PrimitiveWheelLocalizer {
+    private final SampleMecanumDrive drive;
+    private final boolean useExternalHeading;
+
+    public MecanumWheelLocalizer(SampleMecanumDrive drive, boolean useExternalHeading) {
+        super(4);
+
+        this.drive = drive;
+        this.useExternalHeading = useExternalHeading;
+    }
+
+    public MecanumWheelLocalizer(SampleMecanumDrive drive) {
+        this(drive, true);
+    }
+
+    @Override
+    protected void getWheelPositions(double[] wheelPositions) {
+        drive.getWheelPositions(wheelPositions);
+    }
+
+    @Override
+    protected boolean getWheelVelocities(double[] wheelVelocities) {
+        drive.getWheelVelocities(wheelVelocities);
+        return true;
+    }
+
+    @Override
+    protected void wheelToRobot(double[] wheelValues, double[] robotValues) {
+        // see MecanumKinematics.wheelToRobotVelocities(); wheels are ordered lf, lr, rr, rf
+        double k = (drive.getTrackWidth() + drive.getWheelBase()) / 2.0;
+        double frontLeft = wheelValues[0], rearLeft = wheelValues[1];
+        double rearRight = wheelValues[2], frontRight = wheelValues[3];
+
+        robotValues[0] = 0.25 * (frontLeft + rearLeft + rearRight + frontRight);
+        robotValues[1] = 0.25 * (rearLeft + frontRight - frontLeft - rearRight) / drive.getLateralMultiplier();
+        robotValues[2] = 0.25 * (rearRight + frontRight - frontLeft - rearLeft) / k;
+    }
+
+    @Override
+    protected double getExternalHeading() {
+        return useExternalHeading ? drive.getExternalHeading() : Double.NaN;
+    }
+
+    @Override
+    protected double getExternalHeadingVelocity() {
+        return useExternalHeading ? drive.getRawExternalHeadingVelocity() : Double.NaN;
+    }
+
+    @Override
+    protected void onPoseEstimateSet(double heading) {
+        if (useExternalHeading) {
+            drive.setExternalHeading(heading);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+
+/*
+ * Localizer wrapper that runs a callback after every setPoseEstimate(). Drive.setPoseEstimate() is
+ * final, so this is how the sample drives republish their pose record when the pose is reset; they
+ * wrap whatever is passed to setLocalizer() and return the original from getBaseLocalizer(). It also
+ * copies the wrapped localizer's estimate into arrays for publishing (without allocating when the
+ * wrapped localizer is a PrimitiveWheelLocalizer).
+ */
+class PoseResetLocalizer implements Localizer {
+    private final Localizer localizer;
+    private final Runnable onPoseEstimateSet;
+
+    PoseResetLocalizer(Localizer localizer, Runnable onPoseEstimateSet) {
+        this.localizer = localizer;
+        this.onPoseEstimateSet = onPoseEstimateSet;
+    }
+
+    public Localizer getLocalizer() {
+        return localizer;
+    }
+
+    /**
+     * Copies the pose estimate and velocity (x, y, heading) into the given arrays.
+     *
+     * @return false if no velocity is available
+     */
+    public boolean getPoseEstimate(double[] pose, double[] velocity) {
+        if (localizer instanceof PrimitiveWheelLocalizer) {
+            PrimitiveWheelLocalizer primitiveLocalizer = (PrimitiveWheelLocalizer) localizer;
+            primitiveLocalizer.getPoseEstimate(pose);
+            return primitiveLocalizer.getPoseVelocity(velocity);
+        }
+
+        Pose2d poseEstimate = localizer.getPoseEstimate();
+        pose[0] = poseEstimate.getX();
+        pose[1] = poseEstimate.getY();
+        pose[2] = poseEstimate.getHeading();
+
+        Pose2d poseVelocity = localizer.getPoseVelocity();
+        if (poseVelocity == null) {
+            return false;
+        }
+        velocity[0] = poseVelocity.getX();
+        velocity[1] = poseVelocity.getY();
+        velocity[2] = poseVelocity.getHeading();
+        return true;
+    }
+
+    @Override
+    public void update() {
+        localizer.update();
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        return localizer.getPoseEstimate();
+    }
+
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d poseEstimate) {
+        localizer.setPoseEstimate(poseEstimate);
+        onPoseEstimateSet.run();
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        return localizer.getPoseVelocity();
+    }
+}
@@ -0,0 +1,251 @@
+package org.firstinspires.ftc.teamcode.drive;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.util.KinematicsUtil;
+
+/*
+ * Base class for wheel odometry localizers that keeps all per-cycle state in preallocated primitive
+ * arrays. Subclasses fill wheel positions/velocities in place and map wheel values to robot-relative
+ * values; no boxed lists are created during update(). Pose2d instances are only created lazily when
+ * getPoseEstimate()/getPoseVelocity() are called, and only again once the values have changed.
+ *
+ * By default, each cycle's delta is applied with the pose exponential, which assumes the twist was
+ * constant over the cycle. Subclasses can return a finite getSubstepThreshold() so that cycles
+ * longer than it are instead integrated in substeps with a velocity that changes linearly between
+ * the readings at the start and end of the cycle (see KinematicsUtil.substepOdometryUpdate()).
+ */
+public abstract class PrimitiveWheelLocalizer implements Localizer {
+    private static final int MAX_SUBSTEPS = 16;
+
+    private final int wheelCount;
+
+    private final double[] wheelPositions;
+    private final double[] lastWheelPositions;
+    private final double[] wheelDeltas;
+    private final double[] wheelVelocities;
+    private final double[] robotValues = new double[3];
+
+    private final double[] pose = new double[3];
+    private final double[] velocity = new double[3];
+    private final double[] lastVelocity = new double[3];
+
+    private boolean hasLastWheelPositions;
+    private boolean hasVelocity;
+    private boolean hasLastVelocity;
+    private long lastTimestampNanos;
+    private int substepCycleCount;
+    private double lastHeading = Double.NaN;
+
+    private Pose2d poseEstimate;
+    private Pose2d poseVelocity;
+
+    protected PrimitiveWheelLocalizer(int wheelCount) {
+        this.wheelCount = wheelCount;
+
+        wheelPositions = new double[wheelCount];
+        lastWheelPositions = new double[wheelCount];
+        wheelDeltas = new double[wheelCount];
+        wheelVelocities = new double[wheelCount];
+    }
+
+    /**
+     * Fills {@code wheelPositions} with the current wheel positions (in inches).
+     */
+    protected abstract void getWheelPositions(double[] wheelPositions);
+
+    /**
+     * Fills {@code wheelVelocities} with the current wheel velocities (in inches per second).
+     *
+     * @return false if wheel velocities are not available
+     */
+    protected abstract boolean getWheelVelocities(double[] wheelVelocities);
+
+    /**
+     * Maps wheel values (deltas or velocities) to robot-relative x, y, and heading values.
+     */
+    protected abstract void wheelToRobot(double[] wheelValues, double[] robotValues);
+
+    /**
+     * Returns an external heading measurement used in place of the wheel-derived heading or NaN if
+     * there is none.
+     */
+    protected double getExternalHeading() {
+        return Double.NaN;
+    }
+
+    /**
+     * Returns an external heading velocity measurement or NaN if there is none.
+     */
+    protected double getExternalHeadingVelocity() {
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the cycle duration in seconds above which deltas are integrated in substeps or
+     * infinity to always use the pose exponential.
+     */
+    protected double getSubstepThreshold() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the maximum duration of an integration substep in seconds.
+     */
+    protected double getSubstepPeriod() {
+        return 0.005;
+    }
+
+    /**
+     * Returns the System.nanoTime() at which the wheel values were read.
+     */
+    protected long getTimestampNanos() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Called when the pose estimate is overwritten so that external heading sources can be re-zeroed.
+     */
+    protected void onPoseEstimateSet(double heading) {
+    }
+
+    public int getWheelCount() {
+        return wheelCount;
+    }
+
+    @Override
+    public void update() {
+        getWheelPositions(wheelPositions);
+        double heading = getExternalHeading();
+        long timestampNanos = getTimestampNanos();
+
+        // read velocities first so that the substep integration can use them
+        System.arraycopy(velocity, 0, lastVelocity, 0, 3);
+        hasLastVelocity = hasVelocity;
+        hasVelocity = getWheelVelocities(wheelVelocities);
+        if (hasVelocity) {
+            wheelToRobot(wheelVelocities, velocity);
+
+            double headingVelocity = getExternalHeadingVelocity();
+            if (!Double.isNaN(headingVelocity)) {
+                velocity[2] = headingVelocity;
+            }
+        }
+
+        if (hasLastWheelPositions) {
+            for (int i = 0; i < wheelCount; i++) {
+                wheelDeltas[i] = wheelPositions[i] - lastWheelPositions[i];
+            }
+            wheelToRobot(wheelDeltas, robotValues);
+
+            double headingDelta = Double.isNaN(heading) || Double.isNaN(lastHeading)
+                    ? robotValues[2] : Angle.normDelta(heading - lastHeading);
+
+            double dt = (timestampNanos - lastTimestampNanos) * 1e-9;
+            if (hasVelocity && hasLastVelocity && dt > getSubstepThreshold()) {
+                int steps = (int) Math.ceil(dt / getSubstepPeriod());
+                KinematicsUtil.substepOdometryUpdate(pose, robotValues[0], robotValues[1], headingDelta,
+                        lastVelocity, velocity, dt, Math.max(1, Math.min(steps, MAX_SUBSTEPS)));
+                substepCycleCount++;
+            } else {
+                KinematicsUtil.relativeOdometryUpdate(pose, robotValues[0], robotValues[1], headingDelta);
+            }
+        }
+
+        System.arraycopy(wheelPositions, 0, lastWheelPositions, 0, wheelCount);
+        hasLastWheelPositions = true;
+        lastHeading = heading;
+        lastTimestampNanos = timestampNanos;
+
+        // the cached objects stay valid while the values don't change (e.g., while the robot is
+        // standing still), so an idle update doesn't allocate them again
+        if (poseEstimate != null && !matches(poseEstimate, pose)) {
+            poseEstimate = null;
+        }
+        if (poseVelocity != null && (!hasVelocity || !matches(poseVelocity, velocity))) {
+            poseVelocity = null;
+        }
+    }
+
+    private static boolean matches(Pose2d pose, double[] values) {
+        return pose.getX() == values[0] && pose.getY() == values[1] && pose.getHeading() == values[2];
+    }
+
+    @NonNull
+    @Override
+    public Pose2d getPoseEstimate() {
+        if (poseEstimate == null) {
+            poseEstimate = new Pose2d(pose[0], pose[1], pose[2]);
+        }
+        return poseEstimate;
+    }
+
+    @Override
+    public void setPoseEstimate(@NonNull Pose2d poseEstimate) {
+        pose[0] = poseEstimate.getX();
+        pose[1] = poseEstimate.getY();
+        pose[2] = poseEstimate.getHeading();
+
+        hasLastWheelPositions = false;
+        lastHeading = Double.NaN;
+
+        onPoseEstimateSet(poseEstimate.getHeading());
+
+        this.poseEstimate = poseEstimate;
+    }
+
+    @Nullable
+    @Override
+    public Pose2d getPoseVelocity() {
+        if (!hasVelocity) {
+            return null;
+        }
+        if (poseVelocity == null) {
+            poseVelocity = new Pose2d(velocity[0], velocity[1], velocity[2]);
+        }
+        return poseVelocity;
+    }
+
+    /**
+     * Copies the pose estimate (x, y, heading) into {@code pose} without allocating.
+     */
+    public void getPoseEstimate(double[] pose) {
+        System.arraycopy(this.pose, 0, pose, 0, 3);
+    }
+
+    /**
+     * Copies the pose velocity (x, y, heading) into {@code velocity} without allocating.
+     *
+     * @return false if no velocity is available
+     */
+    public boolean getPoseVelocity(double[] velocity) {
+        System.arraycopy(this.velocity, 0, velocity, 0, 3);
+        return hasVelocity;
+    }
+
+    /**
+     * Number of cycles that were integrated in substeps.
+     */
+    public int getSubstepCycleCount() {
+        return substepCycleCount;
+    }
+
+    /**
+     * Copies the wheel positions read during the last update into {@code wheelPositions}.
+     */
+    public void getLastWheelPositions(double[] wheelPositions) {
+        System.arraycopy(lastWheelPositions, 0, wheelPositions, 0, wheelCount);
+    }
+
+    /**
+     * Copies the wheel velocities read during the last update into {@code wheelVelocities}.
+     */
+    public void getLastWheelVelocities(double[] wheelVelocities) {
+        System.arraycopy(this.wheelVelocities, 0, wheelVelocities, 0, wheelCount);
+    }
+}
@@ -6,9 +6,9 @@ import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.roadrunner.control.PIDCoefficients;
 import com.acmerobotics.roadrunner.drive.DriveSignal;
 import com.acmerobotics.roadrunner.drive.MecanumDrive;
-import com.acmerobotics.roadrunner.followers.HolonomicPIDVAFollower;
 import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
 import com.acmerobotics.roadrunner.trajectory.Trajectory;
 import com.acmerobotics.roadrunner.trajectory.TrajectoryBuilder;
 import com.acmerobotics.roadrunner.trajectory.constraints.AngularVelocityConstraint;
@@ -17,6 +17,7 @@ import com.acmerobotics.roadrunner.trajectory.constraints.MinVelocityConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.ProfileAccelerationConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryAccelerationConstraint;
 import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryVelocityConstraint;
+import com.acmerobotics.roadrunner.util.NanoClock;
 import com.qualcomm.hardware.bosch.BNO055IMU;
 import com.qualcomm.hardware.lynx.LynxModule;
 import com.qualcomm.robotcore.hardware.DcMotor;
@@ -25,16 +26,27 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 import com.qualcomm.robotcore.hardware.PIDFCoefficients;
 import com.qualcomm.robotcore.hardware.VoltageSensor;
 import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigurationType;
+import com.qualcomm.robotcore.util.RobotLog;
 
+import org.firstinspires.ftc.teamcode.drive.sim.MecanumDriveSimulator;
+import org.firstinspires.ftc.teamcode.trajectorysequence.LookupTableHolonomicFollower;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBuilder;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner;
+import org.firstinspires.ftc.teamcode.util.AsyncImuSampler;
+import org.firstinspires.ftc.teamcode.util.FlightRecorder;
+import org.firstinspires.ftc.teamcode.util.HardwareSnapshot;
+import org.firstinspires.ftc.teamcode.util.LoopTimer;
 import org.firstinspires.ftc.teamcode.util.LynxModuleUtil;
+import org.firstinspires.ftc.teamcode.util.PosePublisher;
+import org.firstinspires.ftc.teamcode.util.PoseRecord;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.IMU_SAMPLE_RATE;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ACCEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_ACCEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_VEL;
@@ -42,6 +54,7 @@ import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_VEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MOTOR_VELO_PID;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.RUN_USING_ENCODER;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.TRACK_WIDTH;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.USE_ASYNC_IMU;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.encoderTicksToInches;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.kA;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.kStatic;
@@ -57,11 +70,20 @@ public class SampleMecanumDrive extends MecanumDrive {
 
     public static double LATERAL_MULTIPLIER = 1;
 
+    private static final String TAG = "SampleMecanumDrive";
+
     public static double VX_WEIGHT = 1;
     public static double VY_WEIGHT = 1;
     public static double OMEGA_WEIGHT = 1;
 
     private TrajectorySequenceRunner trajectorySequenceRunner;
+    private final LoopTimer loopTimer;
+
+    // published after every update; see getPoseRecord()
+    private final PosePublisher posePublisher = new PosePublisher();
+    private PoseResetLocalizer poseResetLocalizer;
+    private final double[] publishedPose = new double[3];
+    private final double[] publishedVelocity = new double[3];
 
     private static final TrajectoryVelocityConstraint VEL_CONSTRAINT = getVelocityConstraint(MAX_VEL, MAX_ANG_VEL, TRACK_WIDTH);
     private static final TrajectoryAccelerationConstraint ACCEL_CONSTRAINT = getAccelerationConstraint(MAX_ACCEL);
@@ -72,22 +94,29 @@ public class SampleMecanumDrive extends MecanumDrive {
     private List<DcMotorEx> motors;
 
     private BNO055IMU imu;
+    private AsyncImuSampler imuSampler;
     private VoltageSensor batteryVoltageSensor;
 
+    private HardwareSnapshot hardwareSnapshot;
+
+    private MecanumDriveSimulator simulator;
+
+    private FlightRecorder flightRecorder;
+    private final double[] recordedWheelPositions = new double[4];
+    private final double[] recordedWheelVelocities = new double[4];
+
     public SampleMecanumDrive(HardwareMap hardwareMap) {
         super(kV, kA, kStatic, TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
 
-        follower = new HolonomicPIDVAFollower(TRANSLATIONAL_PID, TRANSLATIONAL_PID, HEADING_PID,
+        loopTimer = new LoopTimer();
+
+        follower = new LookupTableHolonomicFollower(TRANSLATIONAL_PID, TRANSLATIONAL_PID, HEADING_PID,
                 new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5);
 
         LynxModuleUtil.ensureMinimumFirmwareVersion(hardwareMap);
 
         batteryVoltageSensor = hardwareMap.voltageSensor.iterator().next();
 
-        for (LynxModule module : hardwareMap.getAll(LynxModule.class)) {
-            module.setBulkCachingMode(LynxModule.BulkCachingMode.AUTO);
-        }
-
         // TODO: adjust the names of the following hardware devices to match your configuration
         imu = hardwareMap.get(BNO055IMU.class, "imu");
         BNO055IMU.Parameters parameters = new BNO055IMU.Parameters();
@@ -111,6 +140,22 @@ public class SampleMecanumDrive extends MecanumDrive {
             motor.setMotorType(motorConfigurationType);
         }
 
+        // switches all hubs to MANUAL bulk caching; see captureHardwareSnapshot(). From now on,
+        // encoder reads on these hubs (including ones for other mechanisms) return the values of the
+        // last update(), so op mode code should read them after calling update() in its loop
+        hardwareSnapshot = new HardwareSnapshot(hardwareMap.getAll(LynxModule.class), motors, imu,
+                batteryVoltageSensor);
+        RobotLog.ii(TAG, "switched all hubs to MANUAL bulk caching; encoder reads return the values"
+                + " of the last update()");
+
+        if (USE_ASYNC_IMU) {
+            imuSampler = new AsyncImuSampler(imu, IMU_SAMPLE_RATE);
+            imuSampler.start();
+            hardwareSnapshot.setImuSampler(imuSampler);
+        }
+
+        hardwareSnapshot.capture();
+
         if (RUN_USING_ENCODER) {
             setMode(DcMotor.RunMode.RUN_USING_ENCODER);
         }
@@ -123,10 +168,40 @@ public class SampleMecanumDrive extends MecanumDrive {
 
         // TODO: reverse any motors using DcMotor.setDirection()
 
+        setLocalizer(new MecanumWheelLocalizer(this));
+
         // TODO: if desired, use setLocalizer() to change the localization method
         // for instance, setLocalizer(new ThreeTrackingWheelLocalizer(...));
+        // tracking wheels on the drive hubs should share the snapshot's bulk reads and timestamps:
+        // setLocalizer(new StandardTrackingWheelLocalizer(hardwareMap, hardwareSnapshot));
+
+        trajectorySequenceRunner = new TrajectorySequenceRunner(follower, HEADING_PID, loopTimer);
+    }
+
+    /**
+     * Creates a drive backed by a simulated drivetrain instead of hardware, e.g., to run trajectory
+     * sequences off the robot. Motor powers go to the simulator, all inputs come from its snapshot,
+     * and the follower, trajectory sequence runner, and loop timer use its clock; see {@link MecanumDriveSimulator}.
+     */
+    public SampleMecanumDrive(MecanumDriveSimulator simulator) {
+        super(kV, kA, kStatic, TRACK_WIDTH, TRACK_WIDTH, LATERAL_MULTIPLIER);
+
+        this.simulator = simulator;
 
-        trajectorySequenceRunner = new TrajectorySequenceRunner(follower, HEADING_PID);
+        NanoClock clock = simulator.getClock();
+        loopTimer = new LoopTimer(clock);
+        follower = new LookupTableHolonomicFollower(TRANSLATIONAL_PID, TRANSLATIONAL_PID, HEADING_PID,
+                new Pose2d(0.5, 0.5, Math.toRadians(5.0)), 0.5, clock);
+
+        // no hardware; the motor configuration methods become no-ops
+        motors = Collections.emptyList();
+
+        hardwareSnapshot = simulator.getHardwareSnapshot();
+        hardwareSnapshot.capture();
+
+        setLocalizer(new MecanumWheelLocalizer(this));
+
+        trajectorySequenceRunner = new TrajectorySequenceRunner(follower, HEADING_PID, loopTimer, clock);
     }
 
     public TrajectoryBuilder trajectoryBuilder(Pose2d startPose) {
@@ -188,10 +263,86 @@ public class SampleMecanumDrive extends MecanumDrive {
         return trajectorySequenceRunner.getLastPoseError();
     }
 
+    /**
+     * Reads every hub exactly once (encoders, IMU, and periodically the battery voltage). Call this
+     * once per loop before using any hardware values; update() does this automatically.
+     */
+    public HardwareSnapshot captureHardwareSnapshot() {
+        hardwareSnapshot.capture();
+        return hardwareSnapshot;
+    }
+
+    public HardwareSnapshot getHardwareSnapshot() {
+        return hardwareSnapshot;
+    }
+
+    /**
+     * Age of the heading used in the last snapshot in seconds (nonzero only with USE_ASYNC_IMU).
+     */
+    public double getExternalHeadingAge() {
+        return hardwareSnapshot.getHeadingAge();
+    }
+
     public void update() {
+        loopTimer.startCycle();
+
+        captureHardwareSnapshot();
+        loopTimer.mark(LoopTimer.Phase.SNAPSHOT);
+
         updatePoseEstimate();
+        publishPoseRecord();
+        loopTimer.mark(LoopTimer.Phase.LOCALIZATION);
+
+        // marks the follower and telemetry phases
         DriveSignal signal = trajectorySequenceRunner.update(getPoseEstimate(), getPoseVelocity());
+
         if (signal != null) setDriveSignal(signal);
+        loopTimer.mark(LoopTimer.Phase.MOTOR_WRITE);
+
+        if (flightRecorder != null) {
+            getWheelPositions(recordedWheelPositions);
+            getWheelVelocities(recordedWheelVelocities);
+            flightRecorder.record(hardwareSnapshot.getTimestampNanos(),
+                    recordedWheelPositions, recordedWheelVelocities,
+                    getPoseEstimate(), trajectorySequenceRunner.getLastTargetPose(), getLastError(),
+                    signal, hardwareSnapshot.getVoltage());
+        }
+
+        loopTimer.endCycle();
+    }
+
+    /**
+     * Starts recording every update() cycle to a binary log with the given name in the RoadRunner
+     * log folder (see {@link FlightRecorder}); convert it with FlightRecordReader afterwards.
+     */
+    public FlightRecorder startFlightRecorder(String name) {
+        stopFlightRecorder();
+        flightRecorder = new FlightRecorder(name, hardwareSnapshot.getMotorCount());
+        flightRecorder.start();
+        return flightRecorder;
+    }
+
+    /**
+     * Flushes and closes the flight recorder log, if one is being recorded.
+     */
+    public void stopFlightRecorder() {
+        if (flightRecorder != null) {
+            flightRecorder.stop();
+            flightRecorder = null;
+        }
+    }
+
+    /**
+     * Stops the background threads (IMU sampler, telemetry publisher, and flight recorder). A
+     * LinearOpMode's threads end with it, but iterative op modes must call this from stop(), since
+     * the threads are otherwise tied to the event loop thread and keep running after the op mode.
+     */
+    public void stop() {
+        if (imuSampler != null) {
+            imuSampler.stop();
+        }
+        trajectorySequenceRunner.stop();
+        stopFlightRecorder();
     }
 
     public void waitForIdle() {
@@ -199,10 +350,60 @@ public class SampleMecanumDrive extends MecanumDrive {
             update();
     }
 
+    /**
+     * Copies the pose estimate published by the most recent update() or setPoseEstimate() into
+     * {@code out} (see {@link PosePublisher#read(double[])} for the layout) without allocating.
+     * Unlike getPoseEstimate(), this is safe to call from any thread while another thread runs
+     * update().
+     *
+     * @return the timestamp of the estimate (System.nanoTime() base)
+     */
+    public long getPoseRecord(double[] out) {
+        return posePublisher.read(out);
+    }
+
+    /**
+     * Like {@link #getPoseRecord(double[])}, but returns the estimate as a new record.
+     */
+    public PoseRecord getPoseRecord() {
+        return posePublisher.read();
+    }
+
+    // stamped with the bulk read the encoders (and so the estimate) come from; a reset pose is
+    // anchored to the same reading, since the localizer measures its next delta from there
+    private void publishPoseRecord() {
+        boolean hasVelocity = poseResetLocalizer.getPoseEstimate(publishedPose, publishedVelocity);
+        posePublisher.publish(publishedPose, hasVelocity ? publishedVelocity : null,
+                hardwareSnapshot.getEncoderTimestampNanos());
+    }
+
+    /**
+     * Wraps the localizer so that setPoseEstimate() also republishes the pose record (see
+     * {@link PoseResetLocalizer}); use getBaseLocalizer() to get the localizer passed in here.
+     */
+    @Override
+    public void setLocalizer(@NonNull Localizer localizer) {
+        poseResetLocalizer = new PoseResetLocalizer(localizer, this::publishPoseRecord);
+        super.setLocalizer(poseResetLocalizer);
+        publishPoseRecord();
+    }
+
+    public Localizer getBaseLocalizer() {
+        Localizer localizer = getLocalizer();
+        if (localizer instanceof PoseResetLocalizer) {
+            return ((PoseResetLocalizer) localizer).getLocalizer();
+        }
+        return localizer;
+    }
+
     public boolean isBusy() {
         return trajectorySequenceRunner.isBusy();
     }
 
+    public LoopTimer getLoopTimer() {
+        return loopTimer;
+    }
+
     public void setMode(DcMotor.RunMode runMode) {
         for (DcMotorEx motor : motors) {
             motor.setMode(runMode);
@@ -218,7 +419,7 @@ public class SampleMecanumDrive extends MecanumDrive {
     public void setPIDFCoefficients(DcMotor.RunMode runMode, PIDFCoefficients coefficients) {
         PIDFCoefficients compensatedCoefficients = new PIDFCoefficients(
                 coefficients.p, coefficients.i, coefficients.d,
-                coefficients.f * 12 / batteryVoltageSensor.getVoltage()
+                coefficients.f * 12 / hardwareSnapshot.getVoltage()
         );
 
         for (DcMotorEx motor : motors) {
@@ -246,12 +447,30 @@ public class SampleMecanumDrive extends MecanumDrive {
         setDrivePower(vel);
     }
 
+    /**
+     * Fills {@code wheelPositions} (lf, lr, rr, rf) in place without allocating.
+     */
+    public void getWheelPositions(double[] wheelPositions) {
+        for (int i = 0; i < hardwareSnapshot.getMotorCount(); i++) {
+            wheelPositions[i] = encoderTicksToInches(hardwareSnapshot.getEncoderPosition(i));
+        }
+    }
+
+    /**
+     * Fills {@code wheelVelocities} (lf, lr, rr, rf) in place without allocating.
+     */
+    public void getWheelVelocities(double[] wheelVelocities) {
+        for (int i = 0; i < hardwareSnapshot.getMotorCount(); i++) {
+            wheelVelocities[i] = encoderTicksToInches(hardwareSnapshot.getEncoderVelocity(i));
+        }
+    }
+
     @NonNull
     @Override
     public List<Double> getWheelPositions() {
         List<Double> wheelPositions = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            wheelPositions.add(encoderTicksToInches(motor.getCurrentPosition()));
+        for (int i = 0; i < hardwareSnapshot.getMotorCount(); i++) {
+            wheelPositions.add(encoderTicksToInches(hardwareSnapshot.getEncoderPosition(i)));
         }
         return wheelPositions;
     }
@@ -259,14 +478,22 @@ public class SampleMecanumDrive extends MecanumDrive {
     @Override
     public List<Double> getWheelVelocities() {
         List<Double> wheelVelocities = new ArrayList<>();
-        for (DcMotorEx motor : motors) {
-            wheelVelocities.add(encoderTicksToInches(motor.getVelocity()));
+        for (int i = 0; i < hardwareSnapshot.getMotorCount(); i++) {
+            wheelVelocities.add(encoderTicksToInches(hardwareSnapshot.getEncoderVelocity(i)));
         }
         return wheelVelocities;
     }
 
     @Override
     public void setMotorPowers(double v, double v1, double v2, double v3) {
+        if (simulator != null) {
+            simulator.setMotorPower(0, v);
+            simulator.setMotorPower(1, v1);
+            simulator.setMotorPower(2, v2);
+            simulator.setMotorPower(3, v3);
+            return;
+        }
+
         leftFront.setPower(v);
         leftRear.setPower(v1);
         rightRear.setPower(v2);
@@ -275,11 +502,15 @@ public class SampleMecanumDrive extends MecanumDrive {
 
     @Override
     public double getRawExternalHeading() {
-        return imu.getAngularOrientation().firstAngle;
+        return hardwareSnapshot.getHeading();
     }
 
     @Override
     public Double getExternalHeadingVelocity() {
+        return getRawExternalHeadingVelocity();
+    }
+
+    public double getRawExternalHeadingVelocity() {
         // TODO: This must be changed to match your configuration
         //                           | Z axis
         //                           |
@@ -294,11 +525,11 @@ public class SampleMecanumDrive extends MecanumDrive {
         //
         // The positive x axis points toward the USB port(s)
         //
-        // Adjust the axis rotation rate as necessary
+        // Adjust the axis rotation rate read in HardwareSnapshot.capture() as necessary
         // Rotate about the z axis is the default assuming your REV Hub/Control Hub is laying
         // flat on a surface
 
-        return (double) imu.getAngularVelocity().zRotationRate;
+        return hardwareSnapshot.getHeadingVelocity();
     }
 
     public static TrajectoryVelocityConstraint getVelocityConstraint(double maxVel, double maxAngularVel, double trackWidth) {
@@ -9,6 +9,7 @@ import com.acmerobotics.roadrunner.drive.TankDrive;
 import com.acmerobotics.roadrunner.followers.TankPIDVAFollower;
 import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.localization.Localizer;
 import com.acmerobotics.roadrunner.trajectory.Trajectory;
 import com.acmerobotics.roadrunner.trajectory.TrajectoryBuilder;
 import com.acmerobotics.roadrunner.trajectory.constraints.AngularVelocityConstraint;
@@ -29,11 +30,16 @@ import com.qualcomm.robotcore.hardware.configuration.typecontainers.MotorConfigu
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBuilder;
 import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner;
+import org.firstinspires.ftc.teamcode.util.AsyncImuSampler;
+import org.firstinspires.ftc.teamcode.util.LoopTimer;
 import org.firstinspires.ftc.teamcode.util.LynxModuleUtil;
+import org.firstinspires.ftc.teamcode.util.PosePublisher;
+import org.firstinspires.ftc.teamcode.util.PoseRecord;
 
 import java.util.Arrays;
 import java.util.List;
 
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.IMU_SAMPLE_RATE;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ACCEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_ACCEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_VEL;
@@ -41,6 +47,7 @@ import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_VEL;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MOTOR_VELO_PID;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.RUN_USING_ENCODER;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.TRACK_WIDTH;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.USE_ASYNC_IMU;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.encoderTicksToInches;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.kA;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.kStatic;
@@ -59,6 +66,13 @@ public class SampleTankDrive extends TankDrive {
     public static double OMEGA_WEIGHT = 1;
 
     private TrajectorySequenceRunner trajectorySequenceRunner;
+    private final LoopTimer loopTimer = new LoopTimer();
+
+    // published after every update; see getPoseRecord()
+    private final PosePublisher posePublisher = new PosePublisher();
+    private PoseResetLocalizer poseResetLocalizer;
+    private final double[] publishedPose = new double[3];
+    private final double[] publishedVelocity = new double[3];
 
     private static final TrajectoryVelocityConstraint VEL_CONSTRAINT = getVelocityConstraint(MAX_VEL, MAX_ANG_VEL, TRACK_WIDTH);
     private static final TrajectoryAccelerationConstraint accelConstraint = getAccelerationConstraint(MAX_ACCEL);
@@ -67,6 +81,8 @@ public class SampleTankDrive extends TankDrive {
 
     private List<DcMotorEx> motors, leftMotors, rightMotors;
     private BNO055IMU imu;
+    private AsyncImuSampler imuSampler;
+    private final AsyncImuSampler.Sample imuSample = new AsyncImuSampler.Sample();
 
     private VoltageSensor batteryVoltageSensor;
 
@@ -90,6 +106,11 @@ public class SampleTankDrive extends TankDrive {
         parameters.angleUnit = BNO055IMU.AngleUnit.RADIANS;
         imu.initialize(parameters);
 
+        if (USE_ASYNC_IMU) {
+            imuSampler = new AsyncImuSampler(imu, IMU_SAMPLE_RATE);
+            imuSampler.start();
+        }
+
         // TODO: if your hub is mounted vertically, remap the IMU axes so that the z-axis points
         // upward (normal to the floor) using a command like the following:
         // BNO055IMUUtil.remapAxes(imu, AxesOrder.XYZ, AxesSigns.NPN);
@@ -122,10 +143,13 @@ public class SampleTankDrive extends TankDrive {
 
         // TODO: reverse any motors using DcMotor.setDirection()
 
+        // wraps the default localizer so that setPoseEstimate() republishes the pose record
+        setLocalizer(getLocalizer());
+
         // TODO: if desired, use setLocalizer() to change the localization method
         // for instance, setLocalizer(new ThreeTrackingWheelLocalizer(...));
 
-        trajectorySequenceRunner = new TrajectorySequenceRunner(follower, HEADING_PID);
+        trajectorySequenceRunner = new TrajectorySequenceRunner(follower, HEADING_PID, loopTimer);
     }
 
     public TrajectoryBuilder trajectoryBuilder(Pose2d startPose) {
@@ -189,9 +213,31 @@ public class SampleTankDrive extends TankDrive {
 
 
     public void update() {
+        loopTimer.startCycle();
+
         updatePoseEstimate();
+        publishPoseRecord();
+        loopTimer.mark(LoopTimer.Phase.LOCALIZATION);
+
+        // marks the follower and telemetry phases
         DriveSignal signal = trajectorySequenceRunner.update(getPoseEstimate(), getPoseVelocity());
+
         if (signal != null) setDriveSignal(signal);
+        loopTimer.mark(LoopTimer.Phase.MOTOR_WRITE);
+
+        loopTimer.endCycle();
+    }
+
+    /**
+     * Stops the background threads (IMU sampler and telemetry publisher). A LinearOpMode's threads
+     * end with it, but iterative op modes must call this from stop(), since the threads are
+     * otherwise tied to the event loop thread and keep running after the op mode.
+     */
+    public void stop() {
+        if (imuSampler != null) {
+            imuSampler.stop();
+        }
+        trajectorySequenceRunner.stop();
     }
 
     public void waitForIdle() {
@@ -199,10 +245,57 @@ public class SampleTankDrive extends TankDrive {
             update();
     }
 
+    /**
+     * Copies the pose estimate published by the most recent update() or setPoseEstimate() into
+     * {@code out} (see {@link PosePublisher#read(double[])} for the layout) without allocating.
+     * Unlike getPoseEstimate(), this is safe to call from any thread while another thread runs
+     * update().
+     *
+     * @return the timestamp of the estimate (System.nanoTime() base)
+     */
+    public long getPoseRecord(double[] out) {
+        return posePublisher.read(out);
+    }
+
+    /**
+     * Like {@link #getPoseRecord(double[])}, but returns the estimate as a new record.
+     */
+    public PoseRecord getPoseRecord() {
+        return posePublisher.read();
+    }
+
+    private void publishPoseRecord() {
+        boolean hasVelocity = poseResetLocalizer.getPoseEstimate(publishedPose, publishedVelocity);
+        posePublisher.publish(publishedPose, hasVelocity ? publishedVelocity : null, System.nanoTime());
+    }
+
+    /**
+     * Wraps the localizer so that setPoseEstimate() also republishes the pose record (see
+     * {@link PoseResetLocalizer}); use getBaseLocalizer() to get the localizer passed in here.
+     */
+    @Override
+    public void setLocalizer(@NonNull Localizer localizer) {
+        poseResetLocalizer = new PoseResetLocalizer(localizer, this::publishPoseRecord);
+        super.setLocalizer(poseResetLocalizer);
+        publishPoseRecord();
+    }
+
+    public Localizer getBaseLocalizer() {
+        Localizer localizer = getLocalizer();
+        if (localizer instanceof PoseResetLocalizer) {
+            return ((PoseResetLocalizer) localizer).getLocalizer();
+        }
+        return localizer;
+    }
+
     public boolean isBusy() {
         return trajectorySequenceRunner.isBusy();
     }
 
+    public LoopTimer getLoopTimer() {
+        return loopTimer;
+    }
+
     public void setMode(DcMotor.RunMode runMode) {
         for (DcMotorEx motor : motors) {
             motor.setMode(runMode);
@@ -279,9 +372,19 @@ public class SampleTankDrive extends TankDrive {
 
     @Override
     public double getRawExternalHeading() {
+        if (imuSampler != null && imuSampler.read(imuSample)) {
+            return imuSample.heading;
+        }
         return imu.getAngularOrientation().firstAngle;
     }
 
+    /**
+     * Age of the most recent IMU sample in seconds (zero when the IMU is read synchronously).
+     */
+    public double getExternalHeadingAge() {
+        return imuSampler != null ? imuSampler.getSampleAge() : 0.0;
+    }
+
     @Override
     public Double getExternalHeadingVelocity() {
         // TODO: This must be changed to match your configuration
@@ -302,6 +405,9 @@ public class SampleTankDrive extends TankDrive {
         // Rotate about the z axis is the default assuming your REV Hub/Control Hub is laying
         // flat on a surface
 
+        if (imuSampler != null && imuSampler.read(imuSample)) {
+            return imuSample.headingVelocity;
+        }
         return (double) imu.getAngularVelocity().zRotationRate;
     }
 
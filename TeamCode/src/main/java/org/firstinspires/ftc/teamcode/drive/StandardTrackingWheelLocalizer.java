@@ -1,13 +1,19 @@
 package org.firstinspires.ftc.teamcode.drive;
 
-import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.acmerobotics.dashboard.config.Config;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
-import com.acmerobotics.roadrunner.localization.ThreeTrackingWheelLocalizer;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.util.NanoClock;
 import com.qualcomm.robotcore.hardware.DcMotorEx;
 import com.qualcomm.robotcore.hardware.HardwareMap;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
 import org.firstinspires.ftc.teamcode.util.Encoder;
+import org.firstinspires.ftc.teamcode.util.HardwareSnapshot;
 
 import java.util.Arrays;
 import java.util.List;
@@ -24,9 +30,16 @@ import java.util.List;
  *    |              |
  *    \--------------/
  *
+ * The wheel deltas are mapped to robot motion with a forward matrix that is inverted once at
+ * construction, so update() runs entirely on preallocated primitive arrays (see
+ * PrimitiveWheelLocalizer).
+ *
+ * Cycles longer than SUBSTEP_THRESHOLD (e.g., when the loop slows down under load) are integrated in
+ * substeps of at most SUBSTEP_PERIOD, interpolating between the velocity readings, which keeps fast
+ * strafes with rotation accurate at low loop rates. Set SUBSTEP_THRESHOLD to infinity to disable it.
  */
 @Config
-public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer {
+public class StandardTrackingWheelLocalizer extends PrimitiveWheelLocalizer {
     public static double TICKS_PER_REV = 1440;
     public static double WHEEL_RADIUS = .748; // in
     public static double GEAR_RATIO = 1; // output (wheel) speed / input (encoder) speed
@@ -38,50 +51,140 @@ public class StandardTrackingWheelLocalizer extends ThreeTrackingWheelLocalizer
     public static double X_MULTIPLIER = 1; // Multiplier in the X direction
     public static double Y_MULTIPLIER = 1; // Multiplier in the Y direction
 
-    private Encoder leftEncoder, rightEncoder, frontEncoder;
+    /**
+     * Where the wheel velocities come from.
+     */
+    public enum VelocitySource {
+        RAW, // hub velocity as reported (overflows above 32767 ticks/s)
+        CORRECTED, // hub velocity with the overflow corrected using the position-based estimate
+        ESTIMATE // position-based estimate; see EncoderVelocityEstimator
+    }
+
+    public static VelocitySource VELOCITY_SOURCE = VelocitySource.CORRECTED;
+
+    public static double SUBSTEP_THRESHOLD = 0.02; // s
+    public static double SUBSTEP_PERIOD = 0.005; // s
+
+    private final Encoder leftEncoder, rightEncoder, frontEncoder;
+    private final HardwareSnapshot snapshot;
+
+    // row-major 3x3 matrix mapping wheel deltas to robot-relative x, y, and heading deltas
+    private final double[] forwardMatrix = new double[9];
 
     public StandardTrackingWheelLocalizer(HardwareMap hardwareMap) {
-        super(Arrays.asList(
-                new Pose2d(0, LATERAL_DISTANCE / 2, 0), // left
-                new Pose2d(0, -LATERAL_DISTANCE / 2, 0), // right
-                new Pose2d(FORWARD_OFFSET, 0, Math.toRadians(90)) // front
-        ));
+        this(hardwareMap, null);
+    }
 
-        leftEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "FrontLeft"));
-        rightEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "BackLeft"));
-        frontEncoder = new Encoder(hardwareMap.get(DcMotorEx.class, "BackRight"));
+    /**
+     * @param snapshot snapshot whose bulk reads serve the encoders (e.g., the drive's); its encoder
+     *                 timestamp is used for velocity estimation and substep integration
+     */
+    public StandardTrackingWheelLocalizer(HardwareMap hardwareMap, @Nullable HardwareSnapshot snapshot) {
+        this(new Encoder(hardwareMap.get(DcMotorEx.class, "FrontLeft"), getEncoderClock(snapshot)),
+                new Encoder(hardwareMap.get(DcMotorEx.class, "BackLeft"), getEncoderClock(snapshot)),
+                new Encoder(hardwareMap.get(DcMotorEx.class, "BackRight"), getEncoderClock(snapshot)),
+                snapshot);
 
         // TODO: reverse any encoders using Encoder.setDirection(Encoder.Direction.REVERSE)
         frontEncoder.setDirection(Encoder.Direction.REVERSE);
         rightEncoder.setDirection(Encoder.Direction.REVERSE);
+    }
+
+    /**
+     * Creates the localizer from existing encoders (e.g., simulated ones).
+     *
+     * @param snapshot see {@link #StandardTrackingWheelLocalizer(HardwareMap, HardwareSnapshot)}
+     */
+    public StandardTrackingWheelLocalizer(Encoder leftEncoder, Encoder rightEncoder, Encoder frontEncoder,
+                                          @Nullable HardwareSnapshot snapshot) {
+        super(3);
+
+        this.snapshot = snapshot;
+        this.leftEncoder = leftEncoder;
+        this.rightEncoder = rightEncoder;
+        this.frontEncoder = frontEncoder;
+
+        List<Pose2d> wheelPoses = Arrays.asList(
+                new Pose2d(0, LATERAL_DISTANCE / 2, 0), // left
+                new Pose2d(0, -LATERAL_DISTANCE / 2, 0), // right
+                new Pose2d(FORWARD_OFFSET, 0, Math.toRadians(90)) // front
+        );
 
+        // see ThreeTrackingWheelLocalizer
+        RealMatrix inverseMatrix = new Array2DRowRealMatrix(3, 3);
+        for (int i = 0; i < 3; i++) {
+            Vector2d orientationVector = wheelPoses.get(i).headingVec();
+            Vector2d positionVector = wheelPoses.get(i).vec();
+            inverseMatrix.setEntry(i, 0, orientationVector.getX());
+            inverseMatrix.setEntry(i, 1, orientationVector.getY());
+            inverseMatrix.setEntry(i, 2, positionVector.getX() * orientationVector.getY()
+                    - positionVector.getY() * orientationVector.getX());
+        }
+
+        RealMatrix matrix = new LUDecomposition(inverseMatrix).getSolver().getInverse();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                forwardMatrix[3 * i + j] = matrix.getEntry(i, j);
+            }
+        }
+    }
+
+    private static NanoClock getEncoderClock(@Nullable HardwareSnapshot snapshot) {
+        return snapshot != null ? snapshot.getEncoderClock() : NanoClock.system();
     }
 
     public static double encoderTicksToInches(double ticks) {
         return WHEEL_RADIUS * 2 * Math.PI * GEAR_RATIO * ticks / TICKS_PER_REV;
     }
 
-    @NonNull
     @Override
-    public List<Double> getWheelPositions() {
-        return Arrays.asList(
-                encoderTicksToInches(leftEncoder.getCurrentPosition()),
-                encoderTicksToInches(rightEncoder.getCurrentPosition()),
-                encoderTicksToInches(frontEncoder.getCurrentPosition())
-        );
+    protected void getWheelPositions(double[] wheelPositions) {
+        wheelPositions[0] = encoderTicksToInches(leftEncoder.getCurrentPosition());
+        wheelPositions[1] = encoderTicksToInches(rightEncoder.getCurrentPosition());
+        wheelPositions[2] = encoderTicksToInches(frontEncoder.getCurrentPosition());
     }
 
-    @NonNull
     @Override
-    public List<Double> getWheelVelocities() {
-        // TODO: If your encoder velocity can exceed 32767 counts / second (such as the REV Through Bore and other
-        //  competing magnetic encoders), change Encoder.getRawVelocity() to Encoder.getCorrectedVelocity() to enable a
-        //  compensation method
-
-        return Arrays.asList(
-                encoderTicksToInches(leftEncoder.getRawVelocity()) * X_MULTIPLIER,
-                encoderTicksToInches(rightEncoder.getRawVelocity()) * X_MULTIPLIER,
-                encoderTicksToInches(frontEncoder.getRawVelocity()) * Y_MULTIPLIER
-        );
+    protected boolean getWheelVelocities(double[] wheelVelocities) {
+        // the estimates are updated by getWheelPositions(), which runs first in each update
+        wheelVelocities[0] = encoderTicksToInches(getVelocity(leftEncoder)) * X_MULTIPLIER;
+        wheelVelocities[1] = encoderTicksToInches(getVelocity(rightEncoder)) * X_MULTIPLIER;
+        wheelVelocities[2] = encoderTicksToInches(getVelocity(frontEncoder)) * Y_MULTIPLIER;
+        return true;
+    }
+
+    private static double getVelocity(Encoder encoder) {
+        switch (VELOCITY_SOURCE) {
+            case RAW:
+                return encoder.getRawVelocity();
+            case ESTIMATE:
+                return encoder.getVelocityEstimate();
+            default:
+                return encoder.getCorrectedVelocity();
+        }
+    }
+
+    @Override
+    protected long getTimestampNanos() {
+        return snapshot != null ? snapshot.getEncoderTimestampNanos() : System.nanoTime();
+    }
+
+    @Override
+    protected double getSubstepThreshold() {
+        return SUBSTEP_THRESHOLD;
+    }
+
+    @Override
+    protected double getSubstepPeriod() {
+        return SUBSTEP_PERIOD;
+    }
+
+    @Override
+    protected void wheelToRobot(double[] wheelValues, double[] robotValues) {
+        for (int i = 0; i < 3; i++) {
+            robotValues[i] = forwardMatrix[3 * i] * wheelValues[0]
+                    + forwardMatrix[3 * i + 1] * wheelValues[1]
+                    + forwardMatrix[3 * i + 2] * wheelValues[2];
+        }
     }
 }
@@ -12,11 +12,9 @@ import com.qualcomm.robotcore.util.RobotLog;
 import org.firstinspires.ftc.robotcore.internal.system.Misc;
 import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
 import org.firstinspires.ftc.teamcode.util.LoggingUtil;
+import org.firstinspires.ftc.teamcode.util.RegressionSampleSink;
 import org.firstinspires.ftc.teamcode.util.RegressionUtil;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_RPM;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.RUN_USING_ENCODER;
 import static org.firstinspires.ftc.teamcode.drive.DriveConstants.rpmToVelocity;
@@ -101,9 +99,9 @@ public class AutomaticFeedforwardTuner extends LinearOpMode {
         double accel = (finalVel * finalVel) / (2.0 * DISTANCE);
         double rampTime = Math.sqrt(2.0 * DISTANCE / accel);
 
-        List<Double> timeSamples = new ArrayList<>();
-        List<Double> positionSamples = new ArrayList<>();
-        List<Double> powerSamples = new ArrayList<>();
+        RegressionSampleSink rampSamples = new RegressionSampleSink(
+                LoggingUtil.getLogFile(Misc.formatInvariant(
+                        "DriveRampRegression-%d.csv", System.currentTimeMillis())));
 
         drive.setPoseEstimate(new Pose2d());
 
@@ -116,19 +114,16 @@ public class AutomaticFeedforwardTuner extends LinearOpMode {
             double vel = accel * elapsedTime;
             double power = vel / maxVel;
 
-            timeSamples.add(elapsedTime);
-            positionSamples.add(drive.getPoseEstimate().getX());
-            powerSamples.add(power);
+            rampSamples.add(elapsedTime, drive.getPoseEstimate().getX(), power);
 
             drive.setDrivePower(new Pose2d(power, 0.0, 0.0));
+            drive.captureHardwareSnapshot();
             drive.updatePoseEstimate();
         }
         drive.setDrivePower(new Pose2d(0.0, 0.0, 0.0));
+        rampSamples.close();
 
-        RegressionUtil.RampResult rampResult = RegressionUtil.fitRampData(
-                timeSamples, positionSamples, powerSamples, fitIntercept,
-                LoggingUtil.getLogFile(Misc.formatInvariant(
-                        "DriveRampRegression-%d.csv", System.currentTimeMillis())));
+        RegressionUtil.RampResult rampResult = RegressionUtil.fitRampData(rampSamples, fitIntercept);
 
         telemetry.clearAll();
         telemetry.addLine("Quasi-static ramp up test complete");
@@ -179,9 +174,9 @@ public class AutomaticFeedforwardTuner extends LinearOpMode {
 
             double maxPowerTime = DISTANCE / maxVel;
 
-            timeSamples.clear();
-            positionSamples.clear();
-            powerSamples.clear();
+            RegressionSampleSink accelSamples = new RegressionSampleSink(
+                    LoggingUtil.getLogFile(Misc.formatInvariant(
+                            "DriveAccelRegression-%d.csv", System.currentTimeMillis())));
 
             drive.setPoseEstimate(new Pose2d());
             drive.setDrivePower(new Pose2d(MAX_POWER, 0.0, 0.0));
@@ -193,18 +188,16 @@ public class AutomaticFeedforwardTuner extends LinearOpMode {
                     break;
                 }
 
-                timeSamples.add(elapsedTime);
-                positionSamples.add(drive.getPoseEstimate().getX());
-                powerSamples.add(MAX_POWER);
+                accelSamples.add(elapsedTime, drive.getPoseEstimate().getX(), MAX_POWER);
 
+                drive.captureHardwareSnapshot();
                 drive.updatePoseEstimate();
             }
             drive.setDrivePower(new Pose2d(0.0, 0.0, 0.0));
+            accelSamples.close();
 
             RegressionUtil.AccelResult accelResult = RegressionUtil.fitAccelData(
-                    timeSamples, positionSamples, powerSamples, rampResult,
-                    LoggingUtil.getLogFile(Misc.formatInvariant(
-                            "DriveAccelRegression-%d.csv", System.currentTimeMillis())));
+                    accelSamples, rampResult);
 
             telemetry.clearAll();
             telemetry.addLine("Constant power test complete");
@@ -122,6 +122,8 @@ public class DriveVelocityPIDTuner extends LinearOpMode {
                     double targetPower = kV * motionState.getV();
                     drive.setDrivePower(new Pose2d(targetPower, 0, 0));
 
+                    drive.captureHardwareSnapshot();
+
                     List<Double> velocities = drive.getWheelVelocities();
 
                     // update telemetry
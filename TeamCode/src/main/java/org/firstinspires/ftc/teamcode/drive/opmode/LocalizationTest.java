@@ -39,6 +39,8 @@ public class LocalizationTest extends LinearOpMode {
             telemetry.addData("x", poseEstimate.getX());
             telemetry.addData("y", poseEstimate.getY());
             telemetry.addData("heading", poseEstimate.getHeading());
+            telemetry.addData("hardware reads", drive.getHardwareSnapshot().getReadCount());
+            telemetry.addData("heading age (s)", drive.getExternalHeadingAge());
             telemetry.update();
         }
     }
@@ -0,0 +1,83 @@
+package org.firstinspires.ftc.teamcode.drive.opmode;
+
+import android.os.Debug;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.acmerobotics.roadrunner.localization.Localizer;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+import com.qualcomm.robotcore.eventloop.opmode.TeleOp;
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import org.firstinspires.ftc.teamcode.drive.MecanumWheelLocalizer;
+import org.firstinspires.ftc.teamcode.drive.PrimitiveWheelLocalizer;
+import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
+
+/*
+ * Op mode for verifying that the localizer runs without per-cycle heap allocations. After a short
+ * warm up, the hardware snapshot is captured and the localizer updated CYCLES times while the ART
+ * allocation counter for this thread is running; in steady state the reported allocations per cycle
+ * should be zero. Push the robot around by hand while the test is running to exercise the full
+ * odometry path. SimulatedAllocationTest (a JVM unit test) checks the localizers and the drive's
+ * update() off the robot; this op mode is the on-robot cross-check, including the SDK's bulk reads.
+ *
+ * Note that the allocation counter covers everything on the op mode thread, including allocations
+ * inside the SDK's hardware calls (the bulk read is part of every cycle, so it's measured too). IMU
+ * reads allocate inside the SDK, so by default the drive encoder localizer is measured without
+ * external heading; set USE_IMU to include it.
+ */
+@Config
+@TeleOp(group = "drive")
+public class LocalizerAllocationTest extends LinearOpMode {
+    public static int WARMUP_CYCLES = 200;
+    public static int CYCLES = 1000;
+    public static boolean USE_IMU = false;
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
+
+        SampleMecanumDrive drive = new SampleMecanumDrive(hardwareMap);
+
+        drive.setMode(DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+
+        Localizer localizer = drive.getBaseLocalizer();
+        if (!USE_IMU && localizer instanceof MecanumWheelLocalizer) {
+            localizer = new MecanumWheelLocalizer(drive, false);
+        }
+        if (!(localizer instanceof PrimitiveWheelLocalizer)) {
+            telemetry.addLine("Warning: the drive localizer is not a PrimitiveWheelLocalizer");
+        }
+
+        telemetry.addLine("Press play to begin the allocation test");
+        telemetry.update();
+
+        waitForStart();
+
+        while (!isStopRequested()) {
+            for (int i = 0; i < WARMUP_CYCLES && !isStopRequested(); i++) {
+                drive.captureHardwareSnapshot();
+                localizer.update();
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 0; i < CYCLES; i++) {
+                drive.captureHardwareSnapshot();
+                localizer.update();
+            }
+            Debug.stopAllocCounting();
+
+            int allocations = Debug.getThreadAllocCount();
+            int allocatedBytes = Debug.getThreadAllocSize();
+
+            telemetry.addData("localizer", localizer.getClass().getSimpleName());
+            telemetry.addData("allocations", allocations);
+            telemetry.addData("allocations per cycle", (double) allocations / CYCLES);
+            telemetry.addData("bytes per cycle", (double) allocatedBytes / CYCLES);
+            telemetry.update();
+        }
+    }
+}
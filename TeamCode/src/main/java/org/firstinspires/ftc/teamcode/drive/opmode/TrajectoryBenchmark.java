@@ -0,0 +1,86 @@
+package org.firstinspires.ftc.teamcode.drive.opmode;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.MultipleTelemetry;
+import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.robotcore.internal.system.Misc;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceBenchmark;
+import org.firstinspires.ftc.teamcode.util.LoggingUtil;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Op mode that runs TrajectorySequenceBenchmark on the robot controller, for sequences of 1, 2, 4,
+ * ... MAX_SPLINES chained splines. No hardware is used, so the robot can stay on the cart. This
+ * measures the ART runtime the code actually runs on; TrajectoryBenchmarkTest runs the same
+ * benchmark on the JVM so results can be tracked in CI. The results (median, p99, and max) are
+ * shown in telemetry and written to a CSV log in the RoadRunner folder so runs can be compared
+ * across changes.
+ */
+@Config
+@Autonomous(group = "drive")
+public class TrajectoryBenchmark extends LinearOpMode {
+    public static int MAX_SPLINES = 32;
+    public static int WARMUP_ITERATIONS = 5;
+    public static int ITERATIONS = 20;
+    public static int GET_SAMPLES = 1000; // per iteration
+    public static boolean INCREMENTAL_BUILD = true; // see TrajectorySequenceBuilder.setIncremental()
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry = new MultipleTelemetry(telemetry, FtcDashboard.getInstance().getTelemetry());
+
+        telemetry.addLine("Press play to run the trajectory benchmark");
+        telemetry.update();
+
+        waitForStart();
+
+        if (isStopRequested()) return;
+
+        telemetry.clearAll();
+        telemetry.addLine("Running...");
+        telemetry.update();
+
+        TrajectorySequenceBenchmark benchmark = new TrajectorySequenceBenchmark(
+                WARMUP_ITERATIONS, ITERATIONS, GET_SAMPLES, INCREMENTAL_BUILD);
+
+        StringBuilder csv = new StringBuilder(TrajectorySequenceBenchmark.CSV_HEADER).append('\n');
+
+        List<String> summary = new ArrayList<>();
+        for (int splines = 1; splines <= MAX_SPLINES && !isStopRequested(); splines *= 2) {
+            TrajectorySequenceBenchmark.Result result = benchmark.run(splines);
+
+            summary.add(result.getSummary());
+            for (String line : summary) {
+                telemetry.addLine(line);
+            }
+            telemetry.update();
+
+            result.appendCsv(csv);
+        }
+
+        try (PrintWriter pw = new PrintWriter(LoggingUtil.getLogFile(Misc.formatInvariant(
+                "TrajectoryBenchmark-%d.csv", System.currentTimeMillis())))) {
+            pw.print(csv);
+        } catch (FileNotFoundException e) {
+            // ignore
+        }
+
+        for (String line : summary) {
+            telemetry.addLine(line);
+        }
+        telemetry.addLine("Benchmark complete");
+        telemetry.addData("checksum", benchmark.getChecksum());
+        telemetry.update();
+
+        while (!isStopRequested()) {
+            idle();
+        }
+    }
+}
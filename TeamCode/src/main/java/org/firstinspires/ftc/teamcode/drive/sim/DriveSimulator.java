@@ -0,0 +1,195 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+import org.firstinspires.ftc.teamcode.util.KinematicsUtil;
+
+/**
+ * Deterministic physics model of a drivetrain for running the drive code off the robot. Each wheel
+ * is modeled with the same feedforward relationship the drive assumes,
+ * {@code power = kV * v + kA * a + kStatic * sign(v)}, so a perfectly tuned follower tracks the
+ * simulated robot exactly and mistuned gains show up as tracking error. The wheels are then made
+ * consistent with a single rigid-body velocity (no slip), which is integrated into the true pose.
+ *
+ * Time only advances in {@link #step(double)}, which uses fixed sub-steps, so runs are repeatable
+ * and can go as fast as the host allows. A typical loop looks like:
+ * <pre>
+ *   drive.followTrajectorySequenceAsync(sequence);
+ *   while (drive.isBusy()) {
+ *       drive.update();
+ *       simulator.step(0.01);
+ *   }
+ * </pre>
+ */
+public abstract class DriveSimulator {
+    public static final double NOMINAL_VOLTAGE = 12.0;
+
+    private final double kV, kA, kStatic;
+
+    private final SimulatedClock clock = new SimulatedClock();
+    private final SimulatedHardwareSnapshot hardwareSnapshot;
+
+    private final double[] motorPowers;
+    private final double[] wheelPositions;
+    private final double[] wheelVelocities;
+    private final double[] robotVelocity = new double[3];
+    private final double[] pose = new double[3];
+
+    private double voltage = NOMINAL_VOLTAGE;
+    private double maxSubstep = 0.001; // s
+
+    protected DriveSimulator(int wheelCount, double kV, double kA, double kStatic) {
+        this.kV = kV;
+        this.kA = kA;
+        this.kStatic = kStatic;
+
+        motorPowers = new double[wheelCount];
+        wheelPositions = new double[wheelCount];
+        wheelVelocities = new double[wheelCount];
+
+        hardwareSnapshot = new SimulatedHardwareSnapshot(this);
+    }
+
+    protected DriveSimulator(int wheelCount) {
+        this(wheelCount, DriveConstants.kV, DriveConstants.kA, DriveConstants.kStatic);
+    }
+
+    /**
+     * Computes the robot velocity (x, y, heading) corresponding to the given wheel velocities.
+     */
+    protected abstract void wheelToRobot(double[] wheelValues, double[] robotValues);
+
+    /**
+     * Computes the wheel velocities corresponding to the given robot velocity (x, y, heading).
+     */
+    protected abstract void robotToWheel(double[] robotValues, double[] wheelValues);
+
+    public void setMotorPower(int i, double power) {
+        motorPowers[i] = power;
+    }
+
+    public double getMotorPower(int i) {
+        return motorPowers[i];
+    }
+
+    /**
+     * Advances the simulation (and its clock) by {@code dt} seconds.
+     */
+    public void step(double dt) {
+        int substeps = Math.max(1, (int) Math.ceil(dt / maxSubstep));
+        double h = dt / substeps;
+        for (int i = 0; i < substeps; i++) {
+            integrate(h);
+        }
+        clock.advance(dt);
+    }
+
+    private void integrate(double dt) {
+        double powerScale = voltage / NOMINAL_VOLTAGE;
+        for (int i = 0; i < wheelVelocities.length; i++) {
+            wheelVelocities[i] = nextWheelVelocity(wheelVelocities[i], powerScale * motorPowers[i], dt);
+        }
+
+        // the chassis couples the wheels; project them onto a single rigid-body motion
+        wheelToRobot(wheelVelocities, robotVelocity);
+        robotToWheel(robotVelocity, wheelVelocities);
+
+        for (int i = 0; i < wheelPositions.length; i++) {
+            wheelPositions[i] += wheelVelocities[i] * dt;
+        }
+        KinematicsUtil.relativeOdometryUpdate(pose,
+                robotVelocity[0] * dt, robotVelocity[1] * dt, robotVelocity[2] * dt);
+    }
+
+    private double nextWheelVelocity(double vel, double power, double dt) {
+        power = Math.max(-1.0, Math.min(1.0, power));
+
+        // static friction holds a stopped wheel until the power overcomes it
+        if (vel == 0.0 && Math.abs(power) <= kStatic) {
+            return 0.0;
+        }
+
+        double direction = vel != 0.0 ? Math.signum(vel) : Math.signum(power);
+        double steadyStateVel = (power - kStatic * direction) / kV;
+
+        double nextVel;
+        if (kA <= 0.0) {
+            nextVel = steadyStateVel;
+        } else {
+            // exact solution of kA * a = power - kStatic * sign(v) - kV * v over the step
+            nextVel = steadyStateVel + (vel - steadyStateVel) * Math.exp(-kV * dt / kA);
+        }
+
+        // friction stops the wheel rather than reversing it
+        return nextVel * direction < 0.0 ? 0.0 : nextVel;
+    }
+
+    /**
+     * Sets the largest integration step used by {@link #step(double)}.
+     */
+    public void setMaxSubstep(double seconds) {
+        maxSubstep = seconds;
+    }
+
+    public void setVoltage(double voltage) {
+        this.voltage = voltage;
+    }
+
+    public double getVoltage() {
+        return voltage;
+    }
+
+    /**
+     * Teleports the robot without changing the wheel encoders.
+     */
+    public void setPose(Pose2d pose) {
+        this.pose[0] = pose.getX();
+        this.pose[1] = pose.getY();
+        this.pose[2] = pose.getHeading();
+    }
+
+    /**
+     * True (ground truth) pose of the simulated robot.
+     */
+    public Pose2d getPose() {
+        return new Pose2d(pose[0], pose[1], pose[2]);
+    }
+
+    public double getHeading() {
+        return pose[2];
+    }
+
+    public double getHeadingVelocity() {
+        return robotVelocity[2];
+    }
+
+    public int getWheelCount() {
+        return wheelPositions.length;
+    }
+
+    /**
+     * Wheel position in inches.
+     */
+    public double getWheelPosition(int i) {
+        return wheelPositions[i];
+    }
+
+    /**
+     * Wheel velocity in inches per second.
+     */
+    public double getWheelVelocity(int i) {
+        return wheelVelocities[i];
+    }
+
+    public SimulatedClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Snapshot that reads the simulated encoders, IMU, and battery instead of hardware.
+     */
+    public SimulatedHardwareSnapshot getHardwareSnapshot() {
+        return hardwareSnapshot;
+    }
+}
@@ -0,0 +1,52 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
+
+/**
+ * Simulated four wheel mecanum drivetrain (wheels ordered lf, lr, rr, rf like
+ * {@link SampleMecanumDrive}).
+ */
+public class MecanumDriveSimulator extends DriveSimulator {
+    private final double trackWidth, wheelBase, lateralMultiplier;
+
+    public MecanumDriveSimulator(double trackWidth, double wheelBase, double lateralMultiplier,
+                                 double kV, double kA, double kStatic) {
+        super(4, kV, kA, kStatic);
+
+        this.trackWidth = trackWidth;
+        this.wheelBase = wheelBase;
+        this.lateralMultiplier = lateralMultiplier;
+    }
+
+    public MecanumDriveSimulator() {
+        this(DriveConstants.TRACK_WIDTH, DriveConstants.TRACK_WIDTH,
+                SampleMecanumDrive.LATERAL_MULTIPLIER,
+                DriveConstants.kV, DriveConstants.kA, DriveConstants.kStatic);
+    }
+
+    @Override
+    protected void wheelToRobot(double[] wheelValues, double[] robotValues) {
+        double k = (trackWidth + wheelBase) / 2.0;
+        double frontLeft = wheelValues[0], rearLeft = wheelValues[1];
+        double rearRight = wheelValues[2], frontRight = wheelValues[3];
+
+        robotValues[0] = 0.25 * (frontLeft + rearLeft + rearRight + frontRight);
+        robotValues[1] = 0.25 * (rearLeft + frontRight - frontLeft - rearRight) / lateralMultiplier;
+        robotValues[2] = 0.25 * (rearRight + frontRight - frontLeft - rearLeft) / k;
+    }
+
+    @Override
+    protected void robotToWheel(double[] robotValues, double[] wheelValues) {
+        // see MecanumKinematics.robotToWheelVelocities()
+        double k = (trackWidth + wheelBase) / 2.0;
+        double x = robotValues[0];
+        double y = lateralMultiplier * robotValues[1];
+        double omega = k * robotValues[2];
+
+        wheelValues[0] = x - y - omega;
+        wheelValues[1] = x + y - omega;
+        wheelValues[2] = x - y + omega;
+        wheelValues[3] = x + y + omega;
+    }
+}
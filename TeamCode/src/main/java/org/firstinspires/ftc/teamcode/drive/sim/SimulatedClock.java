@@ -0,0 +1,25 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+/**
+ * Clock that only advances when the simulation is stepped, so simulated runs are deterministic and
+ * independent of how fast the host executes them.
+ */
+public class SimulatedClock extends NanoClock {
+    private long nanos;
+
+    public void advance(double seconds) {
+        // rounded rather than truncated so that repeated steps don't drift
+        nanos += Math.round(seconds * 1e9);
+    }
+
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public double seconds() {
+        return nanos * 1e-9;
+    }
+}
@@ -0,0 +1,37 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import org.firstinspires.ftc.teamcode.util.HardwareSnapshot;
+
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.encoderTicksToInches;
+
+/**
+ * {@link HardwareSnapshot} filled from a {@link DriveSimulator} instead of the hubs. Encoder values
+ * are converted back to ticks (positions are rounded like real encoder counts) and timestamps come
+ * from the simulated clock.
+ */
+public class SimulatedHardwareSnapshot extends HardwareSnapshot {
+    private final DriveSimulator simulator;
+    private final double ticksPerInch;
+
+    SimulatedHardwareSnapshot(DriveSimulator simulator) {
+        super(simulator.getWheelCount());
+
+        this.simulator = simulator;
+        this.ticksPerInch = 1.0 / encoderTicksToInches(1.0);
+    }
+
+    @Override
+    public void capture() {
+        for (int i = 0; i < simulator.getWheelCount(); i++) {
+            storeEncoder(i, (int) Math.round(simulator.getWheelPosition(i) * ticksPerInch),
+                    simulator.getWheelVelocity(i) * ticksPerInch);
+        }
+
+        long now = simulator.getClock().nanoTime();
+        storeEncoderTimestamp(now);
+        storeHeading(simulator.getHeading(), simulator.getHeadingVelocity(), now);
+        storeVoltage(simulator.getVoltage());
+
+        completeCapture(now, 0);
+    }
+}
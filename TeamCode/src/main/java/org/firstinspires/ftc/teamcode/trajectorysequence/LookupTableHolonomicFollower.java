@@ -0,0 +1,213 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.control.PIDCoefficients;
+import com.acmerobotics.roadrunner.control.PIDFController;
+import com.acmerobotics.roadrunner.drive.DriveSignal;
+import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.util.Angle;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+/**
+ * Drop-in replacement for Road Runner's HolonomicPIDVAFollower (same control law) that takes its
+ * targets from a {@link TrajectoryLookupTable} when one is given to
+ * {@link #followTrajectory(Trajectory, TrajectoryLookupTable)}. The frame conversions are done on
+ * primitives, so evaluating the target doesn't allocate; only the results (the signal and the error
+ * pose) do. Trajectories followed without a table are evaluated directly, as before.
+ *
+ * The target can be evaluated ahead of the elapsed time with {@link #setLookahead(double)} and the
+ * error computed against a predicted pose with {@link #setPredictedPose(double[])}, which
+ * TrajectorySequenceRunner uses to compensate for the latency between reading the sensors and the
+ * motors acting on the command.
+ */
+public class LookupTableHolonomicFollower extends TrajectoryFollower {
+    private final PIDFController axialController;
+    private final PIDFController lateralController;
+    private final PIDFController headingController;
+
+    private @Nullable TrajectoryLookupTable lookupTable;
+    private final double[] target = new double[TrajectoryLookupTable.STRIDE];
+
+    private double lookahead;
+
+    private final double[] predictedPose = new double[3];
+    private boolean hasPredictedPose;
+
+    private Pose2d lastError = new Pose2d();
+
+    public LookupTableHolonomicFollower(
+            PIDCoefficients axialCoeffs,
+            PIDCoefficients lateralCoeffs,
+            PIDCoefficients headingCoeffs,
+            Pose2d admissibleError,
+            double timeout,
+            NanoClock clock
+    ) {
+        super(admissibleError, timeout, clock);
+
+        axialController = new PIDFController(axialCoeffs);
+        lateralController = new PIDFController(lateralCoeffs);
+        headingController = new PIDFController(headingCoeffs);
+
+        headingController.setInputBounds(-Math.PI, Math.PI);
+    }
+
+    public LookupTableHolonomicFollower(
+            PIDCoefficients axialCoeffs,
+            PIDCoefficients lateralCoeffs,
+            PIDCoefficients headingCoeffs,
+            Pose2d admissibleError,
+            double timeout
+    ) {
+        this(axialCoeffs, lateralCoeffs, headingCoeffs, admissibleError, timeout, NanoClock.system());
+    }
+
+    @Override
+    public void followTrajectory(Trajectory trajectory) {
+        followTrajectory(trajectory, null);
+    }
+
+    /**
+     * Follows {@code trajectory} using {@code lookupTable} (built from the same trajectory) for the
+     * targets, or evaluating the trajectory directly if it's null.
+     */
+    public void followTrajectory(Trajectory trajectory, @Nullable TrajectoryLookupTable lookupTable) {
+        this.lookupTable = lookupTable;
+
+        axialController.reset();
+        lateralController.reset();
+        headingController.reset();
+
+        super.followTrajectory(trajectory);
+    }
+
+    /**
+     * Evaluates the targets {@code lookahead} seconds after the elapsed time (clamped to the end of
+     * the trajectory). This doesn't change when the trajectory is considered finished.
+     */
+    public void setLookahead(double lookahead) {
+        this.lookahead = lookahead;
+    }
+
+    public double getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Computes the error of the following updates against {@code pose} (x, y, heading; copied)
+     * instead of the pose passed to update(). The pose passed to update() is still used to decide
+     * when the trajectory is finished.
+     */
+    public void setPredictedPose(double[] pose) {
+        System.arraycopy(pose, 0, predictedPose, 0, 3);
+        hasPredictedPose = true;
+    }
+
+    public void clearPredictedPose() {
+        hasPredictedPose = false;
+    }
+
+    private void evaluateTarget(double t) {
+        if (lookupTable != null) {
+            lookupTable.get(t, target);
+            return;
+        }
+
+        Trajectory trajectory = getTrajectory();
+        Pose2d pose = trajectory.get(t);
+        Pose2d vel = trajectory.velocity(t);
+        Pose2d accel = trajectory.acceleration(t);
+        target[0] = pose.getX();
+        target[1] = pose.getY();
+        target[2] = pose.getHeading();
+        target[3] = vel.getX();
+        target[4] = vel.getY();
+        target[5] = vel.getHeading();
+        target[6] = accel.getX();
+        target[7] = accel.getY();
+        target[8] = accel.getHeading();
+    }
+
+    @Override
+    protected DriveSignal internalUpdate(Pose2d currentPose, @Nullable Pose2d currentRobotVel) {
+        evaluateTarget(Math.min(elapsedTime() + lookahead, getTrajectory().duration()));
+
+        double heading = target[2];
+        double cos = Math.cos(heading);
+        double sin = Math.sin(heading);
+
+        double fieldVelX = target[3], fieldVelY = target[4], fieldVelHeading = target[5];
+
+        // Kinematics.fieldToRobotVelocity()
+        double robotVelX = cos * fieldVelX + sin * fieldVelY;
+        double robotVelY = -sin * fieldVelX + cos * fieldVelY;
+
+        // Kinematics.fieldToRobotAcceleration()
+        double robotAccelX = cos * target[6] + sin * target[7]
+                + (-fieldVelX * sin + fieldVelY * cos) * fieldVelHeading;
+        double robotAccelY = -sin * target[6] + cos * target[7]
+                + (-fieldVelX * cos - fieldVelY * sin) * fieldVelHeading;
+
+        double currentX, currentY, currentHeading;
+        if (hasPredictedPose) {
+            currentX = predictedPose[0];
+            currentY = predictedPose[1];
+            currentHeading = predictedPose[2];
+        } else {
+            currentX = currentPose.getX();
+            currentY = currentPose.getY();
+            currentHeading = currentPose.getHeading();
+        }
+
+        // Kinematics.calculateRobotPoseError()
+        double currentCos = Math.cos(currentHeading);
+        double currentSin = Math.sin(currentHeading);
+        double fieldErrorX = target[0] - currentX;
+        double fieldErrorY = target[1] - currentY;
+        double errorX = currentCos * fieldErrorX + currentSin * fieldErrorY;
+        double errorY = -currentSin * fieldErrorX + currentCos * fieldErrorY;
+        double errorHeading = Angle.normDelta(heading - currentHeading);
+
+        // the error is passed directly as the setpoint with a measurement of zero
+        axialController.setTargetPosition(errorX);
+        lateralController.setTargetPosition(errorY);
+        headingController.setTargetPosition(errorHeading);
+
+        axialController.setTargetVelocity(robotVelX);
+        lateralController.setTargetVelocity(robotVelY);
+        headingController.setTargetVelocity(fieldVelHeading);
+
+        // note: feedforward is processed at the wheel level
+        double axialCorrection, lateralCorrection, headingCorrection;
+        if (currentRobotVel != null) {
+            axialCorrection = axialController.update(0.0, currentRobotVel.getX());
+            lateralCorrection = lateralController.update(0.0, currentRobotVel.getY());
+            headingCorrection = headingController.update(0.0, currentRobotVel.getHeading());
+        } else {
+            axialCorrection = axialController.update(0.0);
+            lateralCorrection = lateralController.update(0.0);
+            headingCorrection = headingController.update(0.0);
+        }
+
+        lastError = new Pose2d(errorX, errorY, errorHeading);
+
+        return new DriveSignal(
+                new Pose2d(robotVelX + axialCorrection, robotVelY + lateralCorrection,
+                        fieldVelHeading + headingCorrection),
+                new Pose2d(robotAccelX, robotAccelY, target[8])
+        );
+    }
+
+    @Override
+    public Pose2d getLastError() {
+        return lastError;
+    }
+
+    @Override
+    protected void setLastError(Pose2d lastError) {
+        this.lastError = lastError;
+    }
+}
@@ -0,0 +1,219 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import org.firstinspires.ftc.teamcode.util.LatencyHistogram;
+import org.firstinspires.ftc.teamcode.util.LoopTimer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs marker callbacks for {@link TrajectorySequenceRunner}, either inline on the control thread
+ * or on a small bounded pool so slow callbacks (servo moves with sleeps, slow sensor reads) don't
+ * stall path following. Which one is used depends on the runner's ASYNC_MARKERS setting, which
+ * individual markers can override by wrapping their callbacks:
+ * <pre>
+ *   builder.addDisplacementMarker(MarkerExecutor.async(() -> lift.moveTo(HIGH)))
+ *          .addDisplacementMarker(MarkerExecutor.inline(() -> intake.setPower(0)));
+ * </pre>
+ * Async callbacks run in the order they are queued when THREADS is 1 (the default); with more
+ * threads they may overlap. If the queue is full, the callback runs inline instead.
+ *
+ * Every callback is timed, and callbacks taking longer than OVERRUN_THRESHOLD are logged as
+ * warnings (for inline callbacks, that's how long following was stalled). Anything an async callback
+ * throws (including Errors, which would otherwise kill the app from the pool thread) is logged and
+ * rethrown on the control thread, wrapped in a RuntimeException, by the next checkFailure(); the
+ * runner calls it every cycle and when a sequence ends, and execute() calls it before dispatching.
+ *
+ * Pool threads are daemons that exit after being idle for a second, so no shutdown is needed.
+ */
+@Config
+public class MarkerExecutor {
+    public static int THREADS = 1;
+    public static int QUEUE_CAPACITY = 16;
+    public static double OVERRUN_THRESHOLD = 0.02; // s
+
+    private static final String TAG = "MarkerExecutor";
+
+    private static class AsyncCallback implements MarkerCallback {
+        private final MarkerCallback callback;
+
+        AsyncCallback(MarkerCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onMarkerReached() {
+            callback.onMarkerReached();
+        }
+    }
+
+    private static class InlineCallback implements MarkerCallback {
+        private final MarkerCallback callback;
+
+        InlineCallback(MarkerCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onMarkerReached() {
+            callback.onMarkerReached();
+        }
+    }
+
+    /**
+     * Marks {@code callback} to always run on the marker pool.
+     */
+    public static MarkerCallback async(MarkerCallback callback) {
+        return new AsyncCallback(callback);
+    }
+
+    /**
+     * Marks {@code callback} to always run inline on the control thread.
+     */
+    public static MarkerCallback inline(MarkerCallback callback) {
+        return new InlineCallback(callback);
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    // only touched on the control thread
+    private final LatencyHistogram inlineHistogram = new LatencyHistogram(LoopTimer.WINDOW_SIZE);
+    // guarded by itself
+    private final LatencyHistogram asyncHistogram = new LatencyHistogram(LoopTimer.WINDOW_SIZE);
+
+    private final AtomicInteger overrunCount = new AtomicInteger();
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+    private final AtomicReference<RuntimeException> asyncFailure = new AtomicReference<>();
+
+    public MarkerExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(
+                Math.max(1, THREADS), Math.max(1, THREADS),
+                1, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, QUEUE_CAPACITY)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "MarkerExecutor-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs {@code callback} inline or on the pool; called on the control thread.
+     *
+     * @param asyncByDefault whether callbacks that aren't wrapped with {@link #async} or
+     *                       {@link #inline} run on the pool
+     */
+    public void execute(MarkerCallback callback, boolean asyncByDefault) {
+        checkFailure();
+
+        boolean runAsync = callback instanceof AsyncCallback
+                || (asyncByDefault && !(callback instanceof InlineCallback));
+
+        if (runAsync) {
+            try {
+                pool.execute(() -> runAsync(callback));
+                return;
+            } catch (RejectedExecutionException e) {
+                rejectedCount.incrementAndGet();
+                RobotLog.ww(TAG, "marker queue full; running callback inline");
+            }
+        }
+
+        long start = System.nanoTime();
+        callback.onMarkerReached();
+        long nanos = System.nanoTime() - start;
+
+        inlineHistogram.record(nanos);
+        checkOverrun(nanos, "inline");
+    }
+
+    private void runAsync(MarkerCallback callback) {
+        long start = System.nanoTime();
+        try {
+            callback.onMarkerReached();
+        } catch (Throwable t) {
+            RobotLog.ee(TAG, t, "async marker callback failed");
+            asyncFailure.compareAndSet(null, new RuntimeException("async marker callback failed", t));
+        }
+        long nanos = System.nanoTime() - start;
+
+        synchronized (asyncHistogram) {
+            asyncHistogram.record(nanos);
+        }
+        checkOverrun(nanos, "async");
+    }
+
+    /**
+     * Rethrows the first failure of an async callback since the last call, if any; called on the
+     * control thread.
+     */
+    public void checkFailure() {
+        RuntimeException failure = asyncFailure.getAndSet(null);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void checkOverrun(long nanos, String mode) {
+        if (nanos * 1e-9 > OVERRUN_THRESHOLD) {
+            overrunCount.incrementAndGet();
+            RobotLog.ww(TAG, "%s marker callback took %.1f ms", mode, nanos * 1e-6);
+        }
+    }
+
+    /**
+     * Histogram of the execution times of inline callbacks; only read it on the control thread.
+     */
+    public LatencyHistogram getInlineHistogram() {
+        return inlineHistogram;
+    }
+
+    /**
+     * Percentile of the execution times of async callbacks in nanoseconds.
+     */
+    public long getAsyncPercentile(double fraction) {
+        synchronized (asyncHistogram) {
+            return asyncHistogram.getPercentile(fraction);
+        }
+    }
+
+    /**
+     * Maximum execution time of async callbacks in nanoseconds.
+     */
+    public long getAsyncMax() {
+        synchronized (asyncHistogram) {
+            return asyncHistogram.getMax();
+        }
+    }
+
+    /**
+     * Number of callbacks that took longer than OVERRUN_THRESHOLD.
+     */
+    public int getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /**
+     * Number of async callbacks that ran inline because the queue was full.
+     */
+    public int getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Number of async callbacks queued or running.
+     */
+    public int getPendingCount() {
+        return pool.getQueue().size() + pool.getActiveCount();
+    }
+}
@@ -0,0 +1,302 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.path.Path;
+import com.acmerobotics.roadrunner.profile.MotionProfile;
+import com.acmerobotics.roadrunner.profile.MotionState;
+import com.acmerobotics.roadrunner.trajectory.DisplacementMarker;
+import com.acmerobotics.roadrunner.trajectory.SpatialMarker;
+import com.acmerobotics.roadrunner.trajectory.TemporalMarker;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resolves the markers of a sequence in one batch. The cumulative start time and displacement of
+ * every segment are computed once, displacement and spatial markers are grouped by the trajectory
+ * they fall on and solved in order of displacement (each solve starts where the previous one
+ * ended), and the resulting markers are attached to their segments with a single rebuild per
+ * segment.
+ */
+class MarkerResolver {
+    private static final double EPSILON = 1e-6;
+    private static final int MAX_ITERATIONS = 64;
+
+    private final List<SequenceSegment> segments;
+
+    // segment i spans [startTimes[i], startTimes[i + 1]]
+    private final double[] startTimes;
+    // for trajectory segments, the displacement along all previous trajectories
+    private final double[] startDisplacements;
+
+    MarkerResolver(List<SequenceSegment> segments) {
+        this.segments = segments;
+
+        int n = segments.size();
+        startTimes = new double[n + 1];
+        startDisplacements = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            SequenceSegment segment = segments.get(i);
+            startTimes[i + 1] = startTimes[i] + segment.getDuration();
+            startDisplacements[i + 1] = startDisplacements[i];
+            if (segment instanceof TrajectorySegment) {
+                startDisplacements[i + 1] += getPath(i).length();
+            }
+        }
+    }
+
+    private Trajectory getTrajectory(int i) {
+        return ((TrajectorySegment) segments.get(i)).getTrajectory();
+    }
+
+    private Path getPath(int i) {
+        return getTrajectory(i).getPath();
+    }
+
+    /**
+     * Converts the markers to sequence times.
+     *
+     * @param duration     total duration of the sequence (the input of temporal marker producers)
+     * @param displacement total displacement of the sequence (the input of displacement marker
+     *                     producers)
+     */
+    List<TrajectoryMarker> resolve(
+            List<TemporalMarker> temporalMarkers,
+            List<DisplacementMarker> displacementMarkers,
+            List<SpatialMarker> spatialMarkers,
+            double duration,
+            double displacement
+    ) {
+        List<TrajectoryMarker> markers = new ArrayList<>(
+                temporalMarkers.size() + displacementMarkers.size() + spatialMarkers.size());
+
+        for (TemporalMarker marker : temporalMarkers) {
+            markers.add(new TrajectoryMarker(marker.getProducer().produce(duration), marker.getCallback()));
+        }
+
+        // every displacement and spatial marker becomes a (segment, displacement within it) query
+        int queryCount = displacementMarkers.size() + spatialMarkers.size();
+        int[] querySegments = new int[queryCount];
+        double[] queryDisplacements = new double[queryCount];
+
+        for (int i = 0; i < displacementMarkers.size(); i++) {
+            locateDisplacement(displacementMarkers.get(i).getProducer().produce(displacement),
+                    i, querySegments, queryDisplacements);
+        }
+        for (int i = 0; i < spatialMarkers.size(); i++) {
+            locatePoint(spatialMarkers.get(i).getPoint(),
+                    displacementMarkers.size() + i, querySegments, queryDisplacements);
+        }
+
+        double[] queryTimes = solveQueries(querySegments, queryDisplacements);
+
+        for (int i = 0; i < displacementMarkers.size(); i++) {
+            markers.add(new TrajectoryMarker(queryTimes[i], displacementMarkers.get(i).getCallback()));
+        }
+        for (int i = 0; i < spatialMarkers.size(); i++) {
+            markers.add(new TrajectoryMarker(queryTimes[displacementMarkers.size() + i],
+                    spatialMarkers.get(i).getCallback()));
+        }
+
+        return markers;
+    }
+
+    private void locateDisplacement(double s, int query, int[] querySegments, double[] queryDisplacements) {
+        // the first trajectory that extends past s; a displacement past the end maps to time zero
+        int lo = 0;
+        int hi = segments.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (startDisplacements[mid + 1] > s) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        // only needed for negative displacements, which precede any turns or waits at the start
+        while (lo < segments.size() && !(segments.get(lo) instanceof TrajectorySegment)) {
+            lo++;
+        }
+
+        if (lo < segments.size()) {
+            querySegments[query] = lo;
+            queryDisplacements[query] = s - startDisplacements[lo];
+        } else {
+            querySegments[query] = -1;
+        }
+    }
+
+    private void locatePoint(Vector2d point, int query, int[] querySegments, double[] queryDisplacements) {
+        // the closest projection of the point onto any of the trajectories
+        double closestDistance = Double.POSITIVE_INFINITY;
+        querySegments[query] = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            if (!(segments.get(i) instanceof TrajectorySegment)) {
+                continue;
+            }
+
+            Path path = getPath(i);
+            double s = path.project(point, 0.25);
+            double distance = point.minus(path.get(s).vec()).norm();
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                querySegments[query] = i;
+                queryDisplacements[query] = s;
+            }
+        }
+    }
+
+    private double[] solveQueries(int[] querySegments, double[] queryDisplacements) {
+        int queryCount = querySegments.length;
+        double[] queryTimes = new double[queryCount];
+
+        // sort by segment, then by displacement, so each segment's profile is swept once
+        Integer[] order = new Integer[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> querySegments[a] != querySegments[b]
+                ? Integer.compare(querySegments[a], querySegments[b])
+                : Double.compare(queryDisplacements[a], queryDisplacements[b]));
+
+        int lastSegment = -1;
+        double lastTime = 0.0;
+        for (int query : order) {
+            int segment = querySegments[query];
+            if (segment < 0) {
+                queryTimes[query] = 0.0;
+                continue;
+            }
+            if (segment != lastSegment) {
+                lastSegment = segment;
+                lastTime = 0.0;
+            }
+
+            lastTime = displacementToTime(getTrajectory(segment).getProfile(),
+                    queryDisplacements[query], lastTime);
+            queryTimes[query] = startTimes[segment] + lastTime;
+        }
+
+        return queryTimes;
+    }
+
+    /**
+     * Attaches the markers to the segments they fall in (markers past the end go to the last
+     * segment).
+     */
+    List<SequenceSegment> attachMarkers(List<TrajectoryMarker> markers) {
+        int n = segments.size();
+        double totalDuration = startTimes[n];
+
+        List<List<TrajectoryMarker>> segmentMarkers = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            segmentMarkers.add(null);
+        }
+
+        for (TrajectoryMarker marker : markers) {
+            double markerTime = Math.min(marker.getTime(), totalDuration);
+            int i = findSegment(markerTime);
+            if (i < 0) {
+                continue;
+            }
+
+            if (segmentMarkers.get(i) == null) {
+                segmentMarkers.set(i, new ArrayList<>(getMarkers(segments.get(i))));
+            }
+            segmentMarkers.get(i).add(new TrajectoryMarker(markerTime - startTimes[i], marker.getCallback()));
+        }
+
+        List<SequenceSegment> result = new ArrayList<>(segments);
+        for (int i = 0; i < n; i++) {
+            List<TrajectoryMarker> newMarkers = segmentMarkers.get(i);
+            if (newMarkers == null) {
+                continue;
+            }
+
+            SequenceSegment segment = segments.get(i);
+            if (segment instanceof WaitSegment) {
+                result.set(i, new WaitSegment(segment.getStartPose(), segment.getDuration(), newMarkers));
+            } else if (segment instanceof TurnSegment) {
+                TurnSegment turnSegment = (TurnSegment) segment;
+                result.set(i, new TurnSegment(turnSegment.getStartPose(), turnSegment.getTotalRotation(),
+                        turnSegment.getMotionProfile(), newMarkers));
+            } else if (segment instanceof TrajectorySegment) {
+                Trajectory trajectory = getTrajectory(i);
+                result.set(i, new TrajectorySegment(
+                        new Trajectory(trajectory.getPath(), trajectory.getProfile(), newMarkers)));
+            }
+        }
+
+        return result;
+    }
+
+    private static List<TrajectoryMarker> getMarkers(SequenceSegment segment) {
+        if (segment instanceof TrajectorySegment) {
+            return ((TrajectorySegment) segment).getTrajectory().getMarkers();
+        }
+        return segment.getMarkers();
+    }
+
+    /**
+     * Index of the first segment ending at or after {@code time} or -1 if there is none.
+     */
+    private int findSegment(double time) {
+        int lo = 0;
+        int hi = segments.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (startTimes[mid + 1] >= time) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo < segments.size() ? lo : -1;
+    }
+
+    /**
+     * Time at which {@code profile} reaches position {@code s}, searching from {@code startTime}
+     * onwards. This assumes the profile position is monotonically increasing. Rather than bisecting,
+     * each step solves the constant-acceleration motion from the current state exactly, which is
+     * exact within a profile segment, so this usually converges in a couple of profile evaluations;
+     * steps that leave the bracket fall back to bisection.
+     */
+    static double displacementToTime(MotionProfile profile, double s, double startTime) {
+        double tLo = Math.max(0.0, startTime);
+        double tHi = profile.duration();
+        if (tLo >= tHi) {
+            return tHi;
+        }
+
+        double t = tLo;
+        for (int i = 0; i < MAX_ITERATIONS && tHi - tLo >= EPSILON; i++) {
+            MotionState state = profile.get(t);
+            double error = s - state.getX();
+            if (Math.abs(error) < EPSILON * EPSILON) {
+                return t;
+            }
+            if (error > 0) {
+                tLo = t;
+            } else {
+                tHi = t;
+            }
+
+            // smallest step dt with v * dt + a * dt^2 / 2 = error
+            double v = state.getV();
+            double discriminant = v * v + 2 * state.getA() * error;
+            double next = discriminant >= 0.0
+                    ? t + 2 * error / (v + Math.copySign(Math.sqrt(discriminant), v))
+                    : Double.NaN;
+            t = next > tLo && next < tHi ? next : 0.5 * (tLo + tHi);
+        }
+        return t;
+    }
+}
@@ -0,0 +1,340 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.FtcDashboard;
+import com.acmerobotics.dashboard.canvas.Canvas;
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
+import org.firstinspires.ftc.teamcode.util.DashboardUtil;
+import org.firstinspires.ftc.teamcode.util.PoseHistory;
+
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_ACTIVE_TRAJECTORY;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_ACTIVE_TURN;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_ACTIVE_WAIT;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_INACTIVE_TRAJECTORY;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_INACTIVE_TURN;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.COLOR_INACTIVE_WAIT;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.POSE_HISTORY_LIMIT;
+import static org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequenceRunner.POSE_HISTORY_MIN_INTERVAL;
+
+/**
+ * Low-priority background publisher for the trajectory sequence dashboard telemetry. The control
+ * loop only copies a few primitives into a preallocated frame of a bounded queue (dropping the oldest
+ * frame when the publisher falls behind); packet building, field drawing, and transmission all
+ * happen on the publisher thread at PUBLISH_RATE.
+ *
+ * Like {@link org.firstinspires.ftc.teamcode.util.AsyncImuSampler}, the publisher thread stops once
+ * the thread that created it terminates, which doesn't happen under an iterative OpMode; call
+ * {@link #stop()} (through TrajectorySequenceRunner.stop()) in that case.
+ */
+@Config
+public class TelemetryPublisher implements Runnable {
+    public static double PUBLISH_RATE = 20; // Hz
+    public static int QUEUE_CAPACITY = 32; // frames
+
+    /**
+     * Primitive copy of the runner state for one control cycle.
+     */
+    private static final class Frame {
+        long timestampNanos;
+        double x, y, heading;
+        double xError, yError, headingError;
+        boolean hasTarget;
+        double targetX, targetY, targetHeading;
+        TrajectorySequence sequence;
+        int segmentIndex;
+        boolean hasTimingSummary;
+        final double[] timingSummary;
+
+        Frame(int timingSummarySize) {
+            timingSummary = new double[timingSummarySize];
+        }
+
+        void copyFrom(Frame other) {
+            timestampNanos = other.timestampNanos;
+            x = other.x;
+            y = other.y;
+            heading = other.heading;
+            xError = other.xError;
+            yError = other.yError;
+            headingError = other.headingError;
+            hasTarget = other.hasTarget;
+            targetX = other.targetX;
+            targetY = other.targetY;
+            targetHeading = other.targetHeading;
+            sequence = other.sequence;
+            segmentIndex = other.segmentIndex;
+            hasTimingSummary = other.hasTimingSummary;
+            if (hasTimingSummary) {
+                System.arraycopy(other.timingSummary, 0, timingSummary, 0, timingSummary.length);
+            }
+        }
+    }
+
+    private final FtcDashboard dashboard;
+    private final String[] timingSummaryKeys;
+
+    private final Frame[] queue;
+    private int queueHead;
+    private int queueSize;
+    private long droppedFrames;
+
+    // publisher-thread state
+    private final Frame latest;
+    private final double[] drainedX;
+    private final double[] drainedY;
+    private final double[] drainedHeading;
+    private final long[] drainedTimestamps;
+    private final double[] timingSummary;
+    private boolean hasTimingSummary;
+    private PoseHistory poseHistory = new PoseHistory(POSE_HISTORY_LIMIT);
+
+    private final Thread owner;
+    private final Thread thread;
+    private volatile boolean running;
+
+    /**
+     * @param dashboard dashboard instance
+     * @param timingSummaryKeys telemetry keys for the values passed to {@link #submit}
+     */
+    public TelemetryPublisher(FtcDashboard dashboard, String[] timingSummaryKeys) {
+        this.dashboard = dashboard;
+        this.timingSummaryKeys = timingSummaryKeys;
+
+        int capacity = Math.max(1, QUEUE_CAPACITY);
+        queue = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            queue[i] = new Frame(timingSummaryKeys.length);
+        }
+        latest = new Frame(timingSummaryKeys.length);
+        drainedX = new double[capacity];
+        drainedY = new double[capacity];
+        drainedHeading = new double[capacity];
+        drainedTimestamps = new long[capacity];
+        timingSummary = new double[timingSummaryKeys.length];
+
+        owner = Thread.currentThread();
+        thread = new Thread(this, "TelemetryPublisher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Enqueues the state of the current control cycle. This only copies primitives into a
+     * preallocated frame; if the queue is full, the oldest frame is dropped.
+     *
+     * @param timingSummary loop timing summary values (matching the keys passed to the
+     *                      constructor) or null if there is no new summary this cycle
+     */
+    public void submit(
+            Pose2d poseEstimate, Pose2d poseError, @Nullable Pose2d targetPose,
+            @Nullable TrajectorySequence sequence, int segmentIndex,
+            @Nullable double[] timingSummary
+    ) {
+        synchronized (queue) {
+            if (queueSize == queue.length) {
+                queueHead = (queueHead + 1) % queue.length;
+                queueSize--;
+                droppedFrames++;
+            }
+
+            Frame frame = queue[(queueHead + queueSize) % queue.length];
+            frame.timestampNanos = System.nanoTime();
+            frame.x = poseEstimate.getX();
+            frame.y = poseEstimate.getY();
+            frame.heading = poseEstimate.getHeading();
+            frame.xError = poseError.getX();
+            frame.yError = poseError.getY();
+            frame.headingError = poseError.getHeading();
+            frame.hasTarget = targetPose != null;
+            if (targetPose != null) {
+                frame.targetX = targetPose.getX();
+                frame.targetY = targetPose.getY();
+                frame.targetHeading = targetPose.getHeading();
+            }
+            frame.sequence = sequence;
+            frame.segmentIndex = segmentIndex;
+            frame.hasTimingSummary = timingSummary != null;
+            if (timingSummary != null) {
+                System.arraycopy(timingSummary, 0, frame.timingSummary, 0, frame.timingSummary.length);
+            }
+
+            queueSize++;
+        }
+    }
+
+    public long getDroppedFrames() {
+        synchronized (queue) {
+            return droppedFrames;
+        }
+    }
+
+    /**
+     * Copies all pending frames out of the queue.
+     *
+     * @return the number of frames drained
+     */
+    private int drain() {
+        synchronized (queue) {
+            int count = queueSize;
+            for (int i = 0; i < count; i++) {
+                Frame frame = queue[(queueHead + i) % queue.length];
+                drainedX[i] = frame.x;
+                drainedY[i] = frame.y;
+                drainedHeading[i] = frame.heading;
+                drainedTimestamps[i] = frame.timestampNanos;
+                if (frame.hasTimingSummary) {
+                    System.arraycopy(frame.timingSummary, 0, timingSummary, 0, timingSummary.length);
+                    hasTimingSummary = true;
+                }
+                if (i == count - 1) {
+                    latest.copyFrom(frame);
+                }
+            }
+            queueHead = (queueHead + count) % queue.length;
+            queueSize = 0;
+            return count;
+        }
+    }
+
+    @Override
+    public void run() {
+        long periodNanos = (long) (1e9 / PUBLISH_RATE);
+        long nextPublishTime = System.nanoTime();
+        while (running && owner.isAlive() && !Thread.currentThread().isInterrupted()) {
+            int count = drain();
+
+            if (count > 0) {
+                if (poseHistory.getCapacity() != POSE_HISTORY_LIMIT) {
+                    // the limit was changed through the dashboard
+                    poseHistory = new PoseHistory(POSE_HISTORY_LIMIT);
+                }
+                poseHistory.setMinInterval(POSE_HISTORY_MIN_INTERVAL);
+                for (int i = 0; i < count; i++) {
+                    poseHistory.add(drainedX[i], drainedY[i], drainedHeading[i], drainedTimestamps[i]);
+                }
+
+                publish();
+            }
+
+            nextPublishTime += periodNanos;
+            long sleepNanos = nextPublishTime - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            } else {
+                nextPublishTime = System.nanoTime();
+            }
+        }
+        running = false;
+    }
+
+    private void publish() {
+        TelemetryPacket packet = new TelemetryPacket();
+        Canvas fieldOverlay = packet.fieldOverlay();
+
+        packet.put("x", latest.x);
+        packet.put("y", latest.y);
+        packet.put("heading (deg)", Math.toDegrees(latest.heading));
+
+        packet.put("xError", latest.xError);
+        packet.put("yError", latest.yError);
+        packet.put("headingError (deg)", Math.toDegrees(latest.headingError));
+
+        if (hasTimingSummary) {
+            for (int i = 0; i < timingSummaryKeys.length; i++) {
+                packet.put(timingSummaryKeys[i], timingSummary[i]);
+            }
+            packet.put("telemetry dropped frames", getDroppedFrames());
+            packet.put("telemetry latency (ms)", (System.nanoTime() - latest.timestampNanos) * 1e-6);
+        }
+
+        draw(fieldOverlay);
+
+        dashboard.sendTelemetryPacket(packet);
+    }
+
+    private void draw(Canvas fieldOverlay) {
+        TrajectorySequence sequence = latest.sequence;
+        SequenceSegment currentSegment = null;
+
+        if (sequence != null) {
+            for (int i = 0; i < sequence.size(); i++) {
+                SequenceSegment segment = sequence.get(i);
+
+                // the sampled geometry is cached by the sequence
+                double[] xPoints = sequence.getPolylineX(i);
+                double[] yPoints = sequence.getPolylineY(i);
+
+                if (segment instanceof TrajectorySegment) {
+                    fieldOverlay.setStrokeWidth(1);
+                    fieldOverlay.setStroke(COLOR_INACTIVE_TRAJECTORY);
+
+                    fieldOverlay.strokePolyline(xPoints, yPoints);
+                } else if (segment instanceof TurnSegment) {
+                    fieldOverlay.setFill(COLOR_INACTIVE_TURN);
+                    fieldOverlay.fillCircle(xPoints[0], yPoints[0], 2);
+                } else if (segment instanceof WaitSegment) {
+                    fieldOverlay.setStrokeWidth(1);
+                    fieldOverlay.setStroke(COLOR_INACTIVE_WAIT);
+                    fieldOverlay.strokeCircle(xPoints[0], yPoints[0], 3);
+                }
+            }
+
+            if (latest.segmentIndex >= 0 && latest.segmentIndex < sequence.size()) {
+                currentSegment = sequence.get(latest.segmentIndex);
+            }
+        }
+
+        if (currentSegment != null) {
+            double[] xPoints = sequence.getPolylineX(latest.segmentIndex);
+            double[] yPoints = sequence.getPolylineY(latest.segmentIndex);
+
+            if (currentSegment instanceof TrajectorySegment) {
+                fieldOverlay.setStrokeWidth(1);
+                fieldOverlay.setStroke(COLOR_ACTIVE_TRAJECTORY);
+
+                fieldOverlay.strokePolyline(xPoints, yPoints);
+            } else if (currentSegment instanceof TurnSegment) {
+                fieldOverlay.setFill(COLOR_ACTIVE_TURN);
+                fieldOverlay.fillCircle(xPoints[0], yPoints[0], 3);
+            } else if (currentSegment instanceof WaitSegment) {
+                fieldOverlay.setStrokeWidth(1);
+                fieldOverlay.setStroke(COLOR_ACTIVE_WAIT);
+                fieldOverlay.strokeCircle(xPoints[0], yPoints[0], 3);
+            }
+        }
+
+        if (latest.hasTarget) {
+            fieldOverlay.setStrokeWidth(1);
+            fieldOverlay.setStroke("#4CAF50");
+            DashboardUtil.drawRobot(fieldOverlay, new Pose2d(latest.targetX, latest.targetY, latest.targetHeading));
+        }
+
+        fieldOverlay.setStroke("#3F51B5");
+        DashboardUtil.drawPoseHistory(fieldOverlay, poseHistory);
+
+        fieldOverlay.setStroke("#3F51B5");
+        DashboardUtil.drawRobot(fieldOverlay, new Pose2d(latest.x, latest.y, latest.heading));
+    }
+}
@@ -0,0 +1,302 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.path.Path;
+import com.acmerobotics.roadrunner.profile.MotionProfile;
+import com.acmerobotics.roadrunner.profile.MotionSegment;
+import com.acmerobotics.roadrunner.profile.MotionState;
+import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryAccelerationConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryVelocityConstraint;
+
+import org.firstinspires.ftc.robotcore.internal.system.AppUtil;
+import org.firstinspires.ftc.teamcode.drive.DriveConstants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Persistent cache of trajectory motion profiles, which are by far the most expensive part of
+ * building a trajectory. Profiles are stored in a compact binary file per trajectory and
+ * memory-mapped when loaded.
+ *
+ * Entries are keyed by a hash of the path geometry and of the velocity and acceleration constraints
+ * evaluated along it at the builder's resolution (plus the drive constants and the constraint
+ * classes), so changing a path command, a constraint, or a drive constant yields a different key and
+ * the profile is generated again. The constraints are evaluated at zero robot velocity, so a change
+ * to a constraint that only shows up at other velocities (or any other change the samples can't
+ * see) needs a new constraint version; see
+ * {@link TrajectorySequenceBuilder#setTrajectoryCache(TrajectoryCache, String)}.
+ *
+ * Profiles are stored as states sampled every SAMPLE_PERIOD seconds; each sample becomes a constant
+ * acceleration segment starting from the exact sampled state, so the loaded profile matches the
+ * generated one exactly at every sample and in between except across the original segment
+ * boundaries.
+ *
+ * The path itself isn't cached since followers need the analytic path; it's cheap to rebuild from
+ * the path commands without a profile. See {@link TrajectorySequenceBuilder#setTrajectoryCache}.
+ */
+@Config
+public class TrajectoryCache {
+    public static double SAMPLE_PERIOD = 0.005; // s
+
+    // kept out of LoggingUtil.ROAD_RUNNER_FOLDER so that flight records and other logs pruned to
+    // the log quota don't evict the cache; it's pruned to its own quota (least recently used first)
+    public static final File CACHE_FOLDER = new File(AppUtil.ROOT_FOLDER + "/RoadRunnerCache/");
+    public static long CACHE_QUOTA = 8 * 1024 * 1024; // bytes
+
+    private static final int MAGIC = 0x52525443; // "RRTC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4;
+    private static final int SAMPLE_SIZE = 3 * 8;
+
+    /**
+     * Accumulates the cache key of a trajectory.
+     */
+    public static class KeyBuilder {
+        private final MessageDigest digest;
+        private final ByteBuffer scratch = ByteBuffer.allocate(8);
+
+        public KeyBuilder() {
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+
+            putInt(VERSION);
+            putDouble(SAMPLE_PERIOD);
+            putDouble(DriveConstants.MAX_VEL);
+            putDouble(DriveConstants.MAX_ACCEL);
+            putDouble(DriveConstants.MAX_ANG_VEL);
+            putDouble(DriveConstants.MAX_ANG_ACCEL);
+            putDouble(DriveConstants.TRACK_WIDTH);
+        }
+
+        public KeyBuilder putInt(int value) {
+            scratch.clear();
+            scratch.putInt(value);
+            digest.update(scratch.array(), 0, 4);
+            return this;
+        }
+
+        public KeyBuilder putDouble(double value) {
+            scratch.clear();
+            scratch.putDouble(value);
+            digest.update(scratch.array(), 0, 8);
+            return this;
+        }
+
+        public KeyBuilder putString(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                putInt(value.charAt(i));
+            }
+            return putInt(value.length());
+        }
+
+        public KeyBuilder putPose(Pose2d pose) {
+            return putDouble(pose.getX()).putDouble(pose.getY()).putDouble(pose.getHeading());
+        }
+
+        /**
+         * Adds the geometry of {@code path} between the given displacements along with the
+         * constraints that apply there, sampled at least every {@code resolution} inches (the
+         * spacing the profile generator uses).
+         */
+        public KeyBuilder putPathCommand(Path path, double startDisplacement, double endDisplacement,
+                                         double resolution,
+                                         TrajectoryVelocityConstraint velConstraint,
+                                         TrajectoryAccelerationConstraint accelConstraint) {
+            putDouble(startDisplacement).putDouble(endDisplacement);
+            putString(velConstraint.getClass().getName());
+            putString(accelConstraint.getClass().getName());
+            int intervals = Math.max(1, (int) Math.ceil((endDisplacement - startDisplacement) / resolution));
+            Pose2d zero = new Pose2d();
+            for (int i = 0; i <= intervals; i++) {
+                double s = startDisplacement + (endDisplacement - startDisplacement) * i / intervals;
+                Pose2d pose = path.get(s);
+                Pose2d deriv = path.deriv(s);
+                putPose(pose);
+                putPose(deriv);
+                putPose(path.secondDeriv(s));
+                putDouble(velConstraint.get(s, pose, deriv, zero));
+                putDouble(accelConstraint.get(s, pose, deriv, zero));
+            }
+            return this;
+        }
+
+        public String build() {
+            byte[] hash = digest.digest();
+            StringBuilder key = new StringBuilder(2 * hash.length);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16));
+                key.append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        }
+    }
+
+    private final File folder;
+
+    private int hits;
+    private int misses;
+
+    public TrajectoryCache(File folder) {
+        this.folder = folder;
+    }
+
+    public TrajectoryCache() {
+        this(CACHE_FOLDER);
+    }
+
+    private File getFile(String key) {
+        return new File(folder, key + ".bin");
+    }
+
+    /**
+     * Loads the profile stored under {@code key}.
+     *
+     * @return the profile or null if it isn't cached (or the entry is unreadable)
+     */
+    public synchronized @Nullable MotionProfile load(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            misses++;
+            return null;
+        }
+
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                misses++;
+                return null;
+            }
+            double duration = buffer.getDouble();
+            int sampleCount = buffer.getInt();
+            if (sampleCount < 1 || buffer.remaining() != sampleCount * SAMPLE_SIZE) {
+                misses++;
+                return null;
+            }
+
+            List<MotionSegment> segments = new ArrayList<>(sampleCount);
+            for (int i = 0; i < sampleCount; i++) {
+                double x = buffer.getDouble();
+                double v = buffer.getDouble();
+                double a = buffer.getDouble();
+                double dt = Math.min(SAMPLE_PERIOD, duration - i * SAMPLE_PERIOD);
+                segments.add(new MotionSegment(new MotionState(x, v, a, 0.0), Math.max(dt, 0.0)));
+            }
+
+            hits++;
+            // pruning removes the least recently used entries first
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new MotionProfile(segments);
+        } catch (IOException e) {
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code profile} under {@code key}. Failures are ignored (the profile is simply
+     * generated again next time).
+     */
+    public synchronized void save(String key, MotionProfile profile) {
+        double duration = profile.duration();
+        int sampleCount = Math.max(1, (int) Math.ceil(duration / SAMPLE_PERIOD));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + sampleCount * SAMPLE_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putDouble(duration);
+        buffer.putInt(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            MotionState state = profile.get(i * SAMPLE_PERIOD);
+            buffer.putDouble(state.getX());
+            buffer.putDouble(state.getV());
+            buffer.putDouble(state.getA());
+        }
+        buffer.flip();
+
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+
+        // write to a temporary file first so a partially written entry is never loaded
+        File file = getFile(key);
+        File tempFile = new File(folder, key + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(tempFile, "rw");
+             FileChannel channel = output.getChannel()) {
+            output.setLength(0);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.renameTo(file);
+
+        prune();
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits in CACHE_QUOTA.
+     */
+    private void prune() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        for (int i = 0; i < files.length && size > CACHE_QUOTA; i++) {
+            size -= files[i].length();
+            //noinspection ResultOfMethodCallIgnored
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Deletes every cached profile.
+     */
+    public synchronized void clear() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+}
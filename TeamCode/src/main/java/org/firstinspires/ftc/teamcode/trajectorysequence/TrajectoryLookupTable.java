@@ -0,0 +1,97 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.util.Angle;
+
+/**
+ * Dense time-indexed table of a trajectory's target pose, velocity, and acceleration (all in the
+ * field frame) sampled every SAMPLE_PERIOD seconds. Lookups interpolate linearly between the two
+ * neighboring samples, so evaluating the target each cycle is O(1) and allocation free instead of a
+ * profile segment search plus a path parameter search and spline evaluation.
+ *
+ * Headings are unwrapped when the table is built so they interpolate across +/-pi; the heading
+ * returned by {@link #get(double, double[])} is therefore continuous but not normalized.
+ */
+@Config
+public class TrajectoryLookupTable {
+    public static double SAMPLE_PERIOD = 0.01; // s
+
+    /**
+     * Number of values per sample: pose (x, y, heading), velocity, and acceleration.
+     */
+    public static final int STRIDE = 9;
+
+    private final double duration;
+    private final double samplePeriod;
+    private final int sampleCount;
+    private final double[] samples;
+
+    public TrajectoryLookupTable(Trajectory trajectory, double samplePeriod) {
+        this.duration = trajectory.duration();
+        this.samplePeriod = samplePeriod;
+
+        // the last sample is at the end of the trajectory, which may be closer than a period
+        sampleCount = Math.max(2, (int) Math.ceil(duration / samplePeriod) + 1);
+        samples = new double[STRIDE * sampleCount];
+
+        double lastHeading = 0.0;
+        for (int i = 0; i < sampleCount; i++) {
+            double t = getSampleTime(i);
+            Pose2d pose = trajectory.get(t);
+            Pose2d vel = trajectory.velocity(t);
+            Pose2d accel = trajectory.acceleration(t);
+
+            double heading = i == 0 ? pose.getHeading()
+                    : lastHeading + Angle.normDelta(pose.getHeading() - lastHeading);
+            lastHeading = heading;
+
+            int offset = STRIDE * i;
+            samples[offset] = pose.getX();
+            samples[offset + 1] = pose.getY();
+            samples[offset + 2] = heading;
+            samples[offset + 3] = vel.getX();
+            samples[offset + 4] = vel.getY();
+            samples[offset + 5] = vel.getHeading();
+            samples[offset + 6] = accel.getX();
+            samples[offset + 7] = accel.getY();
+            samples[offset + 8] = accel.getHeading();
+        }
+    }
+
+    public TrajectoryLookupTable(Trajectory trajectory) {
+        this(trajectory, SAMPLE_PERIOD);
+    }
+
+    private double getSampleTime(int i) {
+        return Math.min(i * samplePeriod, duration);
+    }
+
+    /**
+     * Writes the interpolated target at time {@code t} (clamped to the trajectory) into {@code out}
+     * as x, y, heading, then the velocity and acceleration in the same order.
+     */
+    public void get(double t, double[] out) {
+        t = Math.max(0.0, Math.min(t, duration));
+
+        int i = Math.min((int) (t / samplePeriod), sampleCount - 2);
+        double t0 = getSampleTime(i);
+        double dt = getSampleTime(i + 1) - t0;
+        double alpha = dt > 0.0 ? Math.min(1.0, (t - t0) / dt) : 0.0;
+
+        int offset = STRIDE * i;
+        for (int j = 0; j < STRIDE; j++) {
+            double a = samples[offset + j];
+            out[j] = a + alpha * (samples[offset + STRIDE + j] - a);
+        }
+    }
+
+    public double duration() {
+        return duration;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
@@ -1,19 +1,50 @@
 package org.firstinspires.ftc.teamcode.trajectorysequence;
 
 import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.path.Path;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
 
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.util.DashboardUtil;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 public class TrajectorySequence {
     private final List<SequenceSegment> sequenceList;
 
+    // markers of each segment sorted by time; see getMarkerTimes()/getMarkerCallbacks()
+    private final double[][] markerTimes;
+    private final MarkerCallback[][] markerCallbacks;
+
+    // lazily sampled overlay geometry; see getPolylineX()/getPolylineY()
+    private volatile double[][] polylineXs;
+    private volatile double[][] polylineYs;
+
     public TrajectorySequence(List<SequenceSegment> sequenceList) {
         if (sequenceList.size() == 0) throw new EmptySequenceException();
 
         this.sequenceList = Collections.unmodifiableList(sequenceList);
+
+        markerTimes = new double[sequenceList.size()][];
+        markerCallbacks = new MarkerCallback[sequenceList.size()][];
+        for (int i = 0; i < sequenceList.size(); i++) {
+            SequenceSegment segment = sequenceList.get(i);
+            List<TrajectoryMarker> markers = new ArrayList<>(segment instanceof TrajectorySegment
+                    ? ((TrajectorySegment) segment).getTrajectory().getMarkers()
+                    : segment.getMarkers());
+            Collections.sort(markers, (t1, t2) -> Double.compare(t1.getTime(), t2.getTime()));
+
+            markerTimes[i] = new double[markers.size()];
+            markerCallbacks[i] = new MarkerCallback[markers.size()];
+            for (int j = 0; j < markers.size(); j++) {
+                markerTimes[i][j] = markers.get(j).getTime();
+                markerCallbacks[i][j] = markers.get(j).getCallback();
+            }
+        }
     }
 
     public Pose2d start() {
@@ -41,4 +72,75 @@ public class TrajectorySequence {
     public int size() {
         return sequenceList.size();
     }
+
+    /**
+     * Builds the lookup tables of all trajectory segments ahead of time (they're otherwise built
+     * when a segment starts); see {@link TrajectoryLookupTable}.
+     */
+    public void buildLookupTables() {
+        for (SequenceSegment segment : sequenceList) {
+            if (segment instanceof TrajectorySegment) {
+                ((TrajectorySegment) segment).getLookupTable();
+            }
+        }
+    }
+
+    /**
+     * Returns the times (relative to the start of the segment) of the markers of the i-th segment
+     * in ascending order. The returned array must not be modified.
+     */
+    public double[] getMarkerTimes(int i) {
+        return markerTimes[i];
+    }
+
+    /**
+     * Returns the callbacks matching {@link #getMarkerTimes(int)}.
+     */
+    public MarkerCallback[] getMarkerCallbacks(int i) {
+        return markerCallbacks[i];
+    }
+
+    private synchronized void samplePolylines() {
+        if (polylineXs != null) return;
+
+        double[][] xs = new double[sequenceList.size()][];
+        double[][] ys = new double[sequenceList.size()][];
+
+        for (int i = 0; i < sequenceList.size(); i++) {
+            SequenceSegment segment = sequenceList.get(i);
+
+            if (segment instanceof TrajectorySegment) {
+                Path path = ((TrajectorySegment) segment).getTrajectory().getPath();
+                int samples = DashboardUtil.getSampleCount(path);
+                xs[i] = new double[samples];
+                ys[i] = new double[samples];
+                DashboardUtil.samplePath(path, xs[i], ys[i]);
+            } else {
+                // turns and waits are drawn as markers at their start pose
+                xs[i] = new double[] { segment.getStartPose().getX() };
+                ys[i] = new double[] { segment.getStartPose().getY() };
+            }
+        }
+
+        polylineYs = ys;
+        polylineXs = xs;
+    }
+
+    /**
+     * Returns the x coordinates of the sampled path of the i-th segment (a single point at the start
+     * pose for turns and waits). The geometry is sampled once on first use and cached; the returned
+     * array must not be modified.
+     */
+    public double[] getPolylineX(int i) {
+        if (polylineXs == null) samplePolylines();
+        return polylineXs[i];
+    }
+
+    /**
+     * Returns the y coordinates matching {@link #getPolylineX(int)}.
+     */
+    public double[] getPolylineY(int i) {
+        if (polylineXs == null) samplePolylines();
+        return polylineYs[i];
+    }
 }
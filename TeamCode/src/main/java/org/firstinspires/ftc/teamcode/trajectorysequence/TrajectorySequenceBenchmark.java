@@ -0,0 +1,201 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.trajectory.Trajectory;
+import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryAccelerationConstraint;
+import com.acmerobotics.roadrunner.trajectory.constraints.TrajectoryVelocityConstraint;
+
+import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
+import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
+import org.firstinspires.ftc.teamcode.util.LatencyHistogram;
+
+import java.util.Locale;
+
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ACCEL;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_ACCEL;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_ANG_VEL;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.MAX_VEL;
+import static org.firstinspires.ftc.teamcode.drive.DriveConstants.TRACK_WIDTH;
+
+/**
+ * Benchmark of trajectory generation that needs no hardware, so it runs both on the robot
+ * controller (TrajectoryBenchmark op mode) and on the JVM (TrajectoryBenchmarkTest). For a
+ * sequence of chained splines, it measures:
+ *   - build: building the sequence with TrajectorySequenceBuilder
+ *   - marker build: building the same sequence with a displacement and a spatial marker on each
+ *     spline. Both builds run in every iteration, so the marker conversion cost is the difference
+ *     of their medians; both absolute numbers are reported since the difference is noisy
+ *   - get: a single Trajectory.get() on the built trajectories
+ * Each measurement runs the warm up iterations untimed (to let the runtime compile the hot paths)
+ * before the timed iterations. A run stops early when the thread is interrupted.
+ */
+public class TrajectorySequenceBenchmark {
+    private static final TrajectoryVelocityConstraint VEL_CONSTRAINT =
+            SampleMecanumDrive.getVelocityConstraint(MAX_VEL, MAX_ANG_VEL, TRACK_WIDTH);
+    private static final TrajectoryAccelerationConstraint ACCEL_CONSTRAINT =
+            SampleMecanumDrive.getAccelerationConstraint(MAX_ACCEL);
+
+    public static final String CSV_HEADER = "splines,build p50 (ms),build p99 (ms),build max (ms),"
+            + "marker build p50 (ms),marker build p99 (ms),marker build max (ms),markers p50 (ms),"
+            + "get p50 (us),get p99 (us),get max (us)";
+
+    /**
+     * Timings of one sequence size.
+     */
+    public static class Result {
+        public final int splines;
+        public final LatencyHistogram buildHistogram;
+        public final LatencyHistogram markerBuildHistogram;
+        public final LatencyHistogram getHistogram;
+
+        Result(int splines, int iterations) {
+            this.splines = splines;
+            buildHistogram = new LatencyHistogram(iterations);
+            markerBuildHistogram = new LatencyHistogram(iterations);
+            getHistogram = new LatencyHistogram(iterations);
+        }
+
+        /**
+         * Median cost of the markers in nanoseconds (difference of the median build times).
+         */
+        public long getMarkerNanos() {
+            return markerBuildHistogram.getPercentile(0.5) - buildHistogram.getPercentile(0.5);
+        }
+
+        public String getSummary() {
+            return String.format(Locale.US,
+                    "%d splines: build %.2f ms, marker build %.2f ms, get %.2f us (median)", splines,
+                    buildHistogram.getPercentile(0.5) * 1e-6,
+                    markerBuildHistogram.getPercentile(0.5) * 1e-6,
+                    getHistogram.getPercentile(0.5) * 1e-3);
+        }
+
+        public void appendCsv(StringBuilder csv) {
+            csv.append(splines);
+            appendStats(csv, buildHistogram, 1e-6);
+            appendStats(csv, markerBuildHistogram, 1e-6);
+            csv.append(',').append(getMarkerNanos() * 1e-6);
+            appendStats(csv, getHistogram, 1e-3);
+            csv.append('\n');
+        }
+
+        private static void appendStats(StringBuilder csv, LatencyHistogram histogram, double scale) {
+            csv.append(',').append(histogram.getPercentile(0.5) * scale)
+                    .append(',').append(histogram.getPercentile(0.99) * scale)
+                    .append(',').append(histogram.getMax() * scale);
+        }
+    }
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final int getSamples;
+    private final boolean incremental;
+
+    // consumes results so the benchmarked work can't be optimized away
+    private double sink;
+
+    /**
+     * @param getSamples number of Trajectory.get() calls per iteration
+     * @param incremental see TrajectorySequenceBuilder.setIncremental()
+     */
+    public TrajectorySequenceBenchmark(int warmupIterations, int iterations, int getSamples,
+                                       boolean incremental) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.getSamples = getSamples;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Benchmarks a sequence of {@code splines} chained splines.
+     */
+    public Result run(int splines) {
+        Result result = new Result(splines, iterations);
+        for (int i = 0; i < warmupIterations + iterations && !Thread.currentThread().isInterrupted(); i++) {
+            long start = System.nanoTime();
+            TrajectorySequence sequence = buildSequence(splines, false);
+            long buildNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += buildSequence(splines, true).duration();
+            long markerBuildNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int samples = sampleSequence(sequence);
+            long getNanos = (System.nanoTime() - start) / Math.max(1, samples);
+
+            if (i >= warmupIterations) {
+                result.buildHistogram.record(buildNanos);
+                result.markerBuildHistogram.record(markerBuildNanos);
+                result.getHistogram.record(getNanos);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Value derived from every benchmarked result; report it so the work isn't optimized away.
+     */
+    public double getChecksum() {
+        return sink;
+    }
+
+    /**
+     * Builds a sequence of {@code splines} chained splines weaving back and forth (the sequence
+     * extends past the field for larger counts, which doesn't matter here).
+     */
+    private TrajectorySequence buildSequence(int splines, boolean withMarkers) {
+        TrajectorySequenceBuilder builder = new TrajectorySequenceBuilder(
+                new Pose2d(-48, -48, 0),
+                VEL_CONSTRAINT, ACCEL_CONSTRAINT,
+                MAX_ANG_VEL, MAX_ANG_ACCEL
+        ).setIncremental(incremental);
+
+        for (int i = 0; i < splines; i++) {
+            double x = (i % 2 == 0) ? 48 : -48;
+            double y = -48 + 24 * (i + 1);
+            builder.splineTo(new Vector2d(x, y), Math.PI / 2);
+
+            if (withMarkers) {
+                builder.addDisplacementMarker(() -> { });
+                builder.addSpatialMarker(new Vector2d(x, y), () -> { });
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Samples the trajectories of the sequence about getSamples times in total.
+     *
+     * @return the number of samples taken
+     */
+    private int sampleSequence(TrajectorySequence sequence) {
+        int trajectoryCount = 0;
+        for (int i = 0; i < sequence.size(); i++) {
+            if (sequence.get(i) instanceof TrajectorySegment) {
+                trajectoryCount++;
+            }
+        }
+        if (trajectoryCount == 0) {
+            return 0;
+        }
+
+        int samplesPerTrajectory = Math.max(1, getSamples / trajectoryCount);
+        for (int i = 0; i < sequence.size(); i++) {
+            SequenceSegment segment = sequence.get(i);
+            if (!(segment instanceof TrajectorySegment)) {
+                continue;
+            }
+
+            Trajectory trajectory = ((TrajectorySegment) segment).getTrajectory();
+            double dt = trajectory.duration() / samplesPerTrajectory;
+            for (int j = 0; j < samplesPerTrajectory; j++) {
+                sink += trajectory.get(j * dt).getX();
+            }
+        }
+        return samplesPerTrajectory * trajectoryCount;
+    }
+}
@@ -1,7 +1,11 @@
 package org.firstinspires.ftc.teamcode.trajectorysequence;
 
+import androidx.annotation.Nullable;
+
 import com.acmerobotics.roadrunner.geometry.Pose2d;
 import com.acmerobotics.roadrunner.geometry.Vector2d;
+import com.acmerobotics.roadrunner.path.Path;
+import com.acmerobotics.roadrunner.path.PathBuilder;
 import com.acmerobotics.roadrunner.path.PathContinuityViolationException;
 import com.acmerobotics.roadrunner.profile.MotionProfile;
 import com.acmerobotics.roadrunner.profile.MotionProfileGenerator;
@@ -58,6 +62,14 @@ public class TrajectorySequenceBuilder {
 
     private TrajectoryBuilder currentTrajectoryBuilder;
 
+    // incremental mode: the path geometry is tracked with a plain path builder and the motion profile
+    // is only generated once per path in pushPath()
+    private boolean incremental;
+    private TrajectoryCache trajectoryCache;
+    private String constraintVersion = "";
+    private PathBuilder currentPathBuilder;
+    private PendingPath currentPendingPath;
+
     private double currentDuration;
     private double currentDisplacement;
 
@@ -121,7 +133,11 @@ public class TrajectorySequenceBuilder {
     }
 
     public TrajectorySequenceBuilder lineTo(Vector2d endPosition) {
-        return addPath(() -> currentTrajectoryBuilder.lineTo(endPosition, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.lineTo(endPosition, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.lineTo(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder lineTo(
@@ -129,11 +145,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.lineTo(endPosition, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.lineTo(endPosition, velConstraint, accelConstraint),
+                () -> currentPathBuilder.lineTo(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder lineToConstantHeading(Vector2d endPosition) {
-        return addPath(() -> currentTrajectoryBuilder.lineToConstantHeading(endPosition, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.lineToConstantHeading(endPosition, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.lineToConstantHeading(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder lineToConstantHeading(
@@ -141,11 +165,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.lineToConstantHeading(endPosition, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.lineToConstantHeading(endPosition, velConstraint, accelConstraint),
+                () -> currentPathBuilder.lineToConstantHeading(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder lineToLinearHeading(Pose2d endPose) {
-        return addPath(() -> currentTrajectoryBuilder.lineToLinearHeading(endPose, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.lineToLinearHeading(endPose, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.lineToLinearHeading(endPose)
+        );
     }
 
     public TrajectorySequenceBuilder lineToLinearHeading(
@@ -153,11 +185,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.lineToLinearHeading(endPose, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.lineToLinearHeading(endPose, velConstraint, accelConstraint),
+                () -> currentPathBuilder.lineToLinearHeading(endPose)
+        );
     }
 
     public TrajectorySequenceBuilder lineToSplineHeading(Pose2d endPose) {
-        return addPath(() -> currentTrajectoryBuilder.lineToSplineHeading(endPose, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.lineToSplineHeading(endPose, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.lineToSplineHeading(endPose)
+        );
     }
 
     public TrajectorySequenceBuilder lineToSplineHeading(
@@ -165,11 +205,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.lineToSplineHeading(endPose, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.lineToSplineHeading(endPose, velConstraint, accelConstraint),
+                () -> currentPathBuilder.lineToSplineHeading(endPose)
+        );
     }
 
     public TrajectorySequenceBuilder strafeTo(Vector2d endPosition) {
-        return addPath(() -> currentTrajectoryBuilder.strafeTo(endPosition, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.strafeTo(endPosition, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.strafeTo(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder strafeTo(
@@ -177,11 +225,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.strafeTo(endPosition, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.strafeTo(endPosition, velConstraint, accelConstraint),
+                () -> currentPathBuilder.strafeTo(endPosition)
+        );
     }
 
     public TrajectorySequenceBuilder forward(double distance) {
-        return addPath(() -> currentTrajectoryBuilder.forward(distance, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.forward(distance, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.forward(distance)
+        );
     }
 
     public TrajectorySequenceBuilder forward(
@@ -189,11 +245,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.forward(distance, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.forward(distance, velConstraint, accelConstraint),
+                () -> currentPathBuilder.forward(distance)
+        );
     }
 
     public TrajectorySequenceBuilder back(double distance) {
-        return addPath(() -> currentTrajectoryBuilder.back(distance, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.back(distance, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.back(distance)
+        );
     }
 
     public TrajectorySequenceBuilder back(
@@ -201,11 +265,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.back(distance, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.back(distance, velConstraint, accelConstraint),
+                () -> currentPathBuilder.back(distance)
+        );
     }
 
     public TrajectorySequenceBuilder strafeLeft(double distance) {
-        return addPath(() -> currentTrajectoryBuilder.strafeLeft(distance, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.strafeLeft(distance, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.strafeLeft(distance)
+        );
     }
 
     public TrajectorySequenceBuilder strafeLeft(
@@ -213,11 +285,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.strafeLeft(distance, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.strafeLeft(distance, velConstraint, accelConstraint),
+                () -> currentPathBuilder.strafeLeft(distance)
+        );
     }
 
     public TrajectorySequenceBuilder strafeRight(double distance) {
-        return addPath(() -> currentTrajectoryBuilder.strafeRight(distance, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.strafeRight(distance, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.strafeRight(distance)
+        );
     }
 
     public TrajectorySequenceBuilder strafeRight(
@@ -225,11 +305,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.strafeRight(distance, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.strafeRight(distance, velConstraint, accelConstraint),
+                () -> currentPathBuilder.strafeRight(distance)
+        );
     }
 
     public TrajectorySequenceBuilder splineTo(Vector2d endPosition, double endHeading) {
-        return addPath(() -> currentTrajectoryBuilder.splineTo(endPosition, endHeading, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.splineTo(endPosition, endHeading, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.splineTo(endPosition, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineTo(
@@ -238,11 +326,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.splineTo(endPosition, endHeading, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.splineTo(endPosition, endHeading, velConstraint, accelConstraint),
+                () -> currentPathBuilder.splineTo(endPosition, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToConstantHeading(Vector2d endPosition, double endHeading) {
-        return addPath(() -> currentTrajectoryBuilder.splineToConstantHeading(endPosition, endHeading, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.splineToConstantHeading(endPosition, endHeading, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.splineToConstantHeading(endPosition, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToConstantHeading(
@@ -251,11 +347,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.splineToConstantHeading(endPosition, endHeading, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.splineToConstantHeading(endPosition, endHeading, velConstraint, accelConstraint),
+                () -> currentPathBuilder.splineToConstantHeading(endPosition, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToLinearHeading(Pose2d endPose, double endHeading) {
-        return addPath(() -> currentTrajectoryBuilder.splineToLinearHeading(endPose, endHeading, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.splineToLinearHeading(endPose, endHeading, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.splineToLinearHeading(endPose, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToLinearHeading(
@@ -264,11 +368,19 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.splineToLinearHeading(endPose, endHeading, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.splineToLinearHeading(endPose, endHeading, velConstraint, accelConstraint),
+                () -> currentPathBuilder.splineToLinearHeading(endPose, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToSplineHeading(Pose2d endPose, double endHeading) {
-        return addPath(() -> currentTrajectoryBuilder.splineToSplineHeading(endPose, endHeading, currentVelConstraint, currentAccelConstraint));
+        return addPath(
+                currentVelConstraint, currentAccelConstraint,
+                () -> currentTrajectoryBuilder.splineToSplineHeading(endPose, endHeading, currentVelConstraint, currentAccelConstraint),
+                () -> currentPathBuilder.splineToSplineHeading(endPose, endHeading)
+        );
     }
 
     public TrajectorySequenceBuilder splineToSplineHeading(
@@ -277,10 +389,43 @@ public class TrajectorySequenceBuilder {
             TrajectoryVelocityConstraint velConstraint,
             TrajectoryAccelerationConstraint accelConstraint
     ) {
-        return addPath(() -> currentTrajectoryBuilder.splineToSplineHeading(endPose, endHeading, velConstraint, accelConstraint));
+        return addPath(
+                velConstraint, accelConstraint,
+                () -> currentTrajectoryBuilder.splineToSplineHeading(endPose, endHeading, velConstraint, accelConstraint),
+                () -> currentPathBuilder.splineToSplineHeading(endPose, endHeading)
+        );
+    }
+
+    /**
+     * Enables or disables incremental building. By default, every path command rebuilds the current
+     * trajectory (including its motion profile) to find the end pose, duration, and displacement,
+     * which makes building quadratic in the number of chained path commands. In incremental mode,
+     * the end pose and displacement come from the path geometry alone and each trajectory's motion
+     * profile is generated once when the path ends.
+     *
+     * Temporal markers added relative to the current duration while a path is open are resolved
+     * against that path's final motion profile (the time at which the robot passes the current
+     * point), rather than against the duration of the path so far with the robot coming to a stop.
+     * Call this before adding any path commands.
+     */
+    public TrajectorySequenceBuilder setIncremental(boolean incremental) {
+        if (incremental != this.incremental) {
+            pushPath();
+            this.incremental = incremental;
+        }
+        return this;
     }
 
-    private TrajectorySequenceBuilder addPath(AddPathCallback callback) {
+    private TrajectorySequenceBuilder addPath(
+            TrajectoryVelocityConstraint velConstraint,
+            TrajectoryAccelerationConstraint accelConstraint,
+            AddPathCallback callback,
+            AddPathCallback pathCallback
+    ) {
+        if (incremental) {
+            return addPathIncremental(velConstraint, accelConstraint, callback, pathCallback);
+        }
+
         if (currentTrajectoryBuilder == null) newPath();
 
         try {
@@ -305,6 +450,61 @@ public class TrajectorySequenceBuilder {
         return this;
     }
 
+    private TrajectorySequenceBuilder addPathIncremental(
+            TrajectoryVelocityConstraint velConstraint,
+            TrajectoryAccelerationConstraint accelConstraint,
+            AddPathCallback callback,
+            AddPathCallback pathCallback
+    ) {
+        if (currentTrajectoryBuilder == null) newPath();
+
+        // the path builder performs the same continuity checks, so the trajectory builder is only
+        // touched once the command is known to be valid
+        try {
+            pathCallback.run();
+        } catch (PathContinuityViolationException e) {
+            newPath();
+            pathCallback.run();
+        }
+        callback.run();
+
+        Path path = currentPathBuilder.build();
+        double pathLength = path.length();
+
+        currentPendingPath.commands.add(
+                new PathCommand(lastDisplacementTraj, pathLength, velConstraint, accelConstraint));
+
+        lastPose = path.end();
+        currentDisplacement += pathLength - lastDisplacementTraj;
+        lastDisplacementTraj = pathLength;
+
+        return this;
+    }
+
+    /**
+     * Loads the motion profiles of this sequence's trajectories from {@code cache} when they were
+     * generated before (with the same path, constraints, and drive constants) and stores them
+     * otherwise. Implies incremental building (see {@link #setIncremental(boolean)}), which tracks
+     * the path commands the cache keys are computed from. Call this before adding any path commands.
+     */
+    public TrajectorySequenceBuilder setTrajectoryCache(@Nullable TrajectoryCache trajectoryCache) {
+        return setTrajectoryCache(trajectoryCache, "");
+    }
+
+    /**
+     * Like {@link #setTrajectoryCache(TrajectoryCache)}, with {@code constraintVersion} added to
+     * the cache keys. The keys only see the constraints at zero robot velocity and at the sampled
+     * displacements, so change the version whenever a constraint changes in a way those samples
+     * can't show (e.g., a velocity-dependent constraint, or one whose parameters aren't reflected
+     * along the path).
+     */
+    public TrajectorySequenceBuilder setTrajectoryCache(@Nullable TrajectoryCache trajectoryCache,
+                                                        String constraintVersion) {
+        this.trajectoryCache = trajectoryCache;
+        this.constraintVersion = constraintVersion;
+        return trajectoryCache != null ? setIncremental(true) : this;
+    }
+
     public TrajectorySequenceBuilder setTangent(double tangent) {
         setAbsoluteTangent = true;
         absoluteTangent = tangent;
@@ -383,10 +583,18 @@ public class TrajectorySequenceBuilder {
     }
 
     public TrajectorySequenceBuilder addTemporalMarker(MarkerCallback callback) {
-        return this.addTemporalMarker(currentDuration, callback);
+        return this.UNSTABLE_addTemporalMarkerOffset(0.0, callback);
     }
 
     public TrajectorySequenceBuilder UNSTABLE_addTemporalMarkerOffset(double offset, MarkerCallback callback) {
+        if (currentPendingPath != null) {
+            // the duration of the open path isn't known until its profile is generated
+            PendingPath path = currentPendingPath;
+            double displacement = lastDisplacementTraj;
+            return this.addTemporalMarker(
+                    time -> path.getTime(displacement) + offset, callback);
+        }
+
         return this.addTemporalMarker(currentDuration + offset, callback);
     }
 
@@ -473,11 +681,44 @@ public class TrajectorySequenceBuilder {
 
     private void pushPath() {
         if (currentTrajectoryBuilder != null) {
-            Trajectory builtTraj = currentTrajectoryBuilder.build();
+            Trajectory builtTraj = trajectoryCache != null && currentPendingPath != null
+                    ? buildCachedTrajectory()
+                    : currentTrajectoryBuilder.build();
             sequenceSegments.add(new TrajectorySegment(builtTraj));
+
+            if (currentPendingPath != null) {
+                currentPendingPath.trajectory = builtTraj;
+                currentDuration += builtTraj.duration();
+            }
         }
 
         currentTrajectoryBuilder = null;
+        currentPathBuilder = null;
+        currentPendingPath = null;
+    }
+
+    private Trajectory buildCachedTrajectory() {
+        Path path = currentPathBuilder.build();
+
+        TrajectoryCache.KeyBuilder key = new TrajectoryCache.KeyBuilder()
+                .putString(constraintVersion)
+                .putDouble(resolution)
+                .putDouble(path.length());
+        for (PathCommand command : currentPendingPath.commands) {
+            key.putPathCommand(path, command.startDisplacement, command.endDisplacement, resolution,
+                    command.velConstraint, command.accelConstraint);
+        }
+        String cacheKey = key.build();
+
+        MotionProfile profile = trajectoryCache.load(cacheKey);
+        if (profile != null) {
+            // the cached trajectory has no markers since sequence markers are added in build()
+            return new Trajectory(path, profile, Collections.emptyList());
+        }
+
+        Trajectory builtTraj = currentTrajectoryBuilder.build();
+        trajectoryCache.save(cacheKey, builtTraj.getProfile());
+        return builtTraj;
     }
 
     private void newPath() {
@@ -490,218 +731,72 @@ public class TrajectorySequenceBuilder {
         double tangent = setAbsoluteTangent ? absoluteTangent : Angle.norm(lastPose.getHeading() + tangentOffset);
 
         currentTrajectoryBuilder = new TrajectoryBuilder(lastPose, tangent, currentVelConstraint, currentAccelConstraint, resolution);
+
+        if (incremental) {
+            currentPathBuilder = new PathBuilder(lastPose, tangent);
+            currentPendingPath = new PendingPath(currentDuration);
+        }
     }
 
     public TrajectorySequence build() {
         pushPath();
 
-        List<TrajectoryMarker> globalMarkers = convertMarkersToGlobal(
-                sequenceSegments,
-                temporalMarkers, displacementMarkers, spatialMarkers
+        MarkerResolver markerResolver = new MarkerResolver(sequenceSegments);
+        List<TrajectoryMarker> globalMarkers = markerResolver.resolve(
+                temporalMarkers, displacementMarkers, spatialMarkers,
+                currentDuration, currentDisplacement
         );
 
-        return new TrajectorySequence(projectGlobalMarkersToLocalSegments(globalMarkers, sequenceSegments));
-    }
-
-    private List<TrajectoryMarker> convertMarkersToGlobal(
-            List<SequenceSegment> sequenceSegments,
-            List<TemporalMarker> temporalMarkers,
-            List<DisplacementMarker> displacementMarkers,
-            List<SpatialMarker> spatialMarkers
-    ) {
-        ArrayList<TrajectoryMarker> trajectoryMarkers = new ArrayList<>();
-
-        // Convert temporal markers
-        for (TemporalMarker marker : temporalMarkers) {
-            trajectoryMarkers.add(
-                    new TrajectoryMarker(marker.getProducer().produce(currentDuration), marker.getCallback())
-            );
-        }
-
-        // Convert displacement markers
-        for (DisplacementMarker marker : displacementMarkers) {
-            double time = displacementToTime(
-                    sequenceSegments,
-                    marker.getProducer().produce(currentDisplacement)
-            );
-
-            trajectoryMarkers.add(
-                    new TrajectoryMarker(
-                            time,
-                            marker.getCallback()
-                    )
-            );
-        }
-
-        // Convert spatial markers
-        for (SpatialMarker marker : spatialMarkers) {
-            trajectoryMarkers.add(
-                    new TrajectoryMarker(
-                            pointToTime(sequenceSegments, marker.getPoint()),
-                            marker.getCallback()
-                    )
-            );
-        }
-
-        return trajectoryMarkers;
+        return new TrajectorySequence(markerResolver.attachMarkers(globalMarkers));
     }
 
-    private List<SequenceSegment> projectGlobalMarkersToLocalSegments(List<TrajectoryMarker> markers, List<SequenceSegment> sequenceSegments) {
-        if (sequenceSegments.isEmpty()) return Collections.emptyList();
-
-        double totalSequenceDuration = 0;
-        for (SequenceSegment segment : sequenceSegments) {
-            totalSequenceDuration += segment.getDuration();
-        }
-
-        for (TrajectoryMarker marker : markers) {
-            SequenceSegment segment = null;
-            int segmentIndex = 0;
-            double segmentOffsetTime = 0;
-
-            double currentTime = 0;
-            for (int i = 0; i < sequenceSegments.size(); i++) {
-                SequenceSegment seg = sequenceSegments.get(i);
-
-                double markerTime = Math.min(marker.getTime(), totalSequenceDuration);
-
-                if (currentTime + seg.getDuration() >= markerTime) {
-                    segment = seg;
-                    segmentIndex = i;
-                    segmentOffsetTime = markerTime - currentTime;
-
-                    break;
-                } else {
-                    currentTime += seg.getDuration();
-                }
-            }
-
-            SequenceSegment newSegment = null;
-
-            if (segment instanceof WaitSegment) {
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(segment.getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
-
-                WaitSegment thisSegment = (WaitSegment) segment;
-                newSegment = new WaitSegment(thisSegment.getStartPose(), thisSegment.getDuration(), newMarkers);
-            } else if (segment instanceof TurnSegment) {
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(segment.getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
-
-                TurnSegment thisSegment = (TurnSegment) segment;
-                newSegment = new TurnSegment(thisSegment.getStartPose(), thisSegment.getTotalRotation(), thisSegment.getMotionProfile(), newMarkers);
-            } else if (segment instanceof TrajectorySegment) {
-                TrajectorySegment thisSegment = (TrajectorySegment) segment;
-
-                List<TrajectoryMarker> newMarkers = new ArrayList<>(thisSegment.getTrajectory().getMarkers());
-                newMarkers.add(new TrajectoryMarker(segmentOffsetTime, marker.getCallback()));
-
-                newSegment = new TrajectorySegment(new Trajectory(thisSegment.getTrajectory().getPath(), thisSegment.getTrajectory().getProfile(), newMarkers));
-            }
-
-            sequenceSegments.set(segmentIndex, newSegment);
-        }
-
-        return sequenceSegments;
+    private interface AddPathCallback {
+        void run();
     }
 
-    // Taken from Road Runner's TrajectoryGenerator.displacementToTime() since it's private
-    // note: this assumes that the profile position is monotonic increasing
-    private Double motionProfileDisplacementToTime(MotionProfile profile, double s) {
-        double tLo = 0.0;
-        double tHi = profile.duration();
-        while (!(Math.abs(tLo - tHi) < 1e-6)) {
-            double tMid = 0.5 * (tLo + tHi);
-            if (profile.get(tMid).getX() > s) {
-                tHi = tMid;
-            } else {
-                tLo = tMid;
-            }
+    /**
+     * Displacement range and constraints of a single path command (incremental mode).
+     */
+    private static class PathCommand {
+        private final double startDisplacement;
+        private final double endDisplacement;
+        private final TrajectoryVelocityConstraint velConstraint;
+        private final TrajectoryAccelerationConstraint accelConstraint;
+
+        PathCommand(
+                double startDisplacement,
+                double endDisplacement,
+                TrajectoryVelocityConstraint velConstraint,
+                TrajectoryAccelerationConstraint accelConstraint
+        ) {
+            this.startDisplacement = startDisplacement;
+            this.endDisplacement = endDisplacement;
+            this.velConstraint = velConstraint;
+            this.accelConstraint = accelConstraint;
         }
-        return 0.5 * (tLo + tHi);
     }
 
-    private Double displacementToTime(List<SequenceSegment> sequenceSegments, double s) {
-        double currentTime = 0.0;
-        double currentDisplacement = 0.0;
-
-        for (SequenceSegment segment : sequenceSegments) {
-            if (segment instanceof TrajectorySegment) {
-                TrajectorySegment thisSegment = (TrajectorySegment) segment;
-
-                double segmentLength = thisSegment.getTrajectory().getPath().length();
-
-                if (currentDisplacement + segmentLength > s) {
-                    double target = s - currentDisplacement;
-                    double timeInSegment = motionProfileDisplacementToTime(
-                            thisSegment.getTrajectory().getProfile(),
-                            target
-                    );
+    /**
+     * Path whose trajectory is generated later (incremental mode).
+     */
+    private class PendingPath {
+        private final double startTime;
+        private final List<PathCommand> commands = new ArrayList<>();
+        private Trajectory trajectory;
 
-                    return currentTime + timeInSegment;
-                } else {
-                    currentDisplacement += segmentLength;
-                    currentTime += thisSegment.getTrajectory().duration();
-                }
-            } else {
-                currentTime += segment.getDuration();
-            }
+        PendingPath(double startTime) {
+            this.startTime = startTime;
         }
 
-        return 0.0;
-    }
-
-    private Double pointToTime(List<SequenceSegment> sequenceSegments, Vector2d point) {
-        class ComparingPoints {
-            private final double distanceToPoint;
-            private final double totalDisplacement;
-            private final double thisPathDisplacement;
-
-            public ComparingPoints(double distanceToPoint, double totalDisplacement, double thisPathDisplacement) {
-                this.distanceToPoint = distanceToPoint;
-                this.totalDisplacement = totalDisplacement;
-                this.thisPathDisplacement = thisPathDisplacement;
+        /**
+         * Sequence time at which the robot reaches the given displacement along this path. Only
+         * valid once the path has been pushed.
+         */
+        double getTime(double displacement) {
+            if (displacement >= trajectory.getPath().length()) {
+                return startTime + trajectory.duration();
             }
+            return startTime + MarkerResolver.displacementToTime(trajectory.getProfile(), displacement, 0.0);
         }
-
-        List<ComparingPoints> projectedPoints = new ArrayList<>();
-
-        for (SequenceSegment segment : sequenceSegments) {
-            if (segment instanceof TrajectorySegment) {
-                TrajectorySegment thisSegment = (TrajectorySegment) segment;
-
-                double displacement = thisSegment.getTrajectory().getPath().project(point, 0.25);
-                Vector2d projectedPoint = thisSegment.getTrajectory().getPath().get(displacement).vec();
-                double distanceToPoint = point.minus(projectedPoint).norm();
-
-                double totalDisplacement = 0.0;
-
-                for (ComparingPoints comparingPoint : projectedPoints) {
-                    totalDisplacement += comparingPoint.totalDisplacement;
-                }
-
-                totalDisplacement += displacement;
-
-                projectedPoints.add(new ComparingPoints(distanceToPoint, displacement, totalDisplacement));
-            }
-        }
-
-        ComparingPoints closestPoint = null;
-
-        for (ComparingPoints comparingPoint : projectedPoints) {
-            if (closestPoint == null) {
-                closestPoint = comparingPoint;
-                continue;
-            }
-
-            if (comparingPoint.distanceToPoint < closestPoint.distanceToPoint)
-                closestPoint = comparingPoint;
-        }
-
-        return displacementToTime(sequenceSegments, closestPoint.thisPathDisplacement);
-    }
-
-    private interface AddPathCallback {
-        void run();
     }
 }
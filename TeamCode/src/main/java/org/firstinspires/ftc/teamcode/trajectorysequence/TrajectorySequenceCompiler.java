@@ -0,0 +1,150 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.firstinspires.ftc.robotcore.internal.system.Misc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a named set of trajectory sequences in parallel on a fork-join pool, e.g., every candidate
+ * route of an autonomous during init, so the one picked by vision is ready immediately:
+ * <pre>
+ *   TrajectorySequenceCompiler compiler = new TrajectorySequenceCompiler();
+ *   compiler.submit("zero rings", () -> drive.trajectorySequenceBuilder(startPose)...build());
+ *   compiler.submit("four rings", () -> drive.trajectorySequenceBuilder(startPose)...build());
+ *   waitForStart();
+ *   drive.followTrajectorySequence(compiler.getOrAwait(ringCount == 4 ? "four rings" : "zero rings"));
+ * </pre>
+ * Built sequences are cached by name (along with their dashboard overlay geometry), and the time
+ * each build took is recorded for reporting.
+ */
+public class TrajectorySequenceCompiler {
+
+    /**
+     * Builds a single sequence; called on a pool thread.
+     */
+    public interface SequenceFactory {
+        TrajectorySequence build();
+    }
+
+    private final ForkJoinPool pool;
+    private final Map<String, Future<TrajectorySequence>> futures = new LinkedHashMap<>();
+    private final Map<String, Double> buildTimes = new LinkedHashMap<>();
+
+    /**
+     * @param parallelism number of sequences built concurrently
+     */
+    public TrajectorySequenceCompiler(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    public TrajectorySequenceCompiler() {
+        // leave a core for the op mode and SDK threads
+        this(Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Starts building a sequence in the background, replacing any previous sequence with the same
+     * name.
+     */
+    public synchronized Future<TrajectorySequence> submit(String name, SequenceFactory factory) {
+        Future<TrajectorySequence> future = pool.submit(() -> {
+            long start = System.nanoTime();
+
+            TrajectorySequence sequence = factory.build();
+            // sample the overlay geometry now rather than on the first telemetry frame
+            for (int i = 0; i < sequence.size(); i++) {
+                sequence.getPolylineX(i);
+            }
+            if (TrajectorySequenceRunner.USE_LOOKUP_TABLES) {
+                sequence.buildLookupTables();
+            }
+
+            recordBuildTime(name, (System.nanoTime() - start) * 1e-9);
+            return sequence;
+        });
+        Future<TrajectorySequence> previous = futures.put(name, future);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        buildTimes.remove(name);
+        return future;
+    }
+
+    private synchronized void recordBuildTime(String name, double seconds) {
+        buildTimes.put(name, seconds);
+    }
+
+    public synchronized Future<TrajectorySequence> getFuture(String name) {
+        Future<TrajectorySequence> future = futures.get(name);
+        if (future == null) {
+            throw new IllegalArgumentException("No sequence named \"" + name + "\" was submitted");
+        }
+        return future;
+    }
+
+    /**
+     * Returns the sequence with the given name, waiting for it to finish building if necessary.
+     * Exceptions thrown while building (e.g., {@link EmptySequenceException}) are rethrown here.
+     */
+    public TrajectorySequence getOrAwait(String name) throws InterruptedException {
+        try {
+            return getFuture(name).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public boolean isDone(String name) {
+        return getFuture(name).isDone();
+    }
+
+    public synchronized boolean isAllDone() {
+        for (Future<TrajectorySequence> future : futures.values()) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Time in seconds it took to build the sequence with the given name (NaN if it isn't done).
+     */
+    public synchronized double getBuildTime(String name) {
+        Double buildTime = buildTimes.get(name);
+        return buildTime == null ? Double.NaN : buildTime;
+    }
+
+    /**
+     * Adds a line per submitted sequence with its build status and time.
+     */
+    public synchronized void addBuildTimes(Telemetry telemetry) {
+        for (String name : futures.keySet()) {
+            Double buildTime = buildTimes.get(name);
+            if (buildTime != null) {
+                telemetry.addLine(Misc.formatInvariant("%s: built in %.1f ms", name, buildTime * 1e3));
+            } else if (futures.get(name).isDone()) {
+                telemetry.addLine(name + ": failed");
+            } else {
+                telemetry.addLine(name + ": building...");
+            }
+        }
+    }
+
+    /**
+     * Stops the pool threads once the submitted sequences are built. Already built sequences
+     * remain available.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
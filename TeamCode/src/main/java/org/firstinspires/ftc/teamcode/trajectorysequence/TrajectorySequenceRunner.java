@@ -3,9 +3,7 @@ package org.firstinspires.ftc.teamcode.trajectorysequence;
 import androidx.annotation.Nullable;
 
 import com.acmerobotics.dashboard.FtcDashboard;
-import com.acmerobotics.dashboard.canvas.Canvas;
 import com.acmerobotics.dashboard.config.Config;
-import com.acmerobotics.dashboard.telemetry.TelemetryPacket;
 import com.acmerobotics.roadrunner.control.PIDCoefficients;
 import com.acmerobotics.roadrunner.control.PIDFController;
 import com.acmerobotics.roadrunner.drive.DriveSignal;
@@ -13,19 +11,18 @@ import com.acmerobotics.roadrunner.followers.TrajectoryFollower;
 import com.acmerobotics.roadrunner.geometry.Pose2d;
 import com.acmerobotics.roadrunner.profile.MotionState;
 import com.acmerobotics.roadrunner.trajectory.Trajectory;
-import com.acmerobotics.roadrunner.trajectory.TrajectoryMarker;
+import com.acmerobotics.roadrunner.trajectory.MarkerCallback;
+import com.acmerobotics.roadrunner.util.Angle;
 import com.acmerobotics.roadrunner.util.NanoClock;
+import com.qualcomm.robotcore.util.RobotLog;
 
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.SequenceSegment;
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TrajectorySegment;
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.TurnSegment;
 import org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment.WaitSegment;
-import org.firstinspires.ftc.teamcode.util.DashboardUtil;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import org.firstinspires.ftc.teamcode.util.KinematicsUtil;
+import org.firstinspires.ftc.teamcode.util.LatencyHistogram;
+import org.firstinspires.ftc.teamcode.util.LoopTimer;
 
 @Config
 public class TrajectorySequenceRunner {
@@ -38,6 +35,24 @@ public class TrajectorySequenceRunner {
     public static String COLOR_ACTIVE_WAIT = "#dd2c00";
 
     public static int POSE_HISTORY_LIMIT = 100;
+    public static double POSE_HISTORY_MIN_INTERVAL = 0; // s; set > 0 to decimate the pose history
+
+    // evaluate trajectory targets from precomputed tables (see TrajectoryLookupTable); only used
+    // with a LookupTableHolonomicFollower
+    public static boolean USE_LOOKUP_TABLES = false;
+
+    // run marker callbacks on a background pool unless marked inline; see MarkerExecutor
+    public static boolean ASYNC_MARKERS = false;
+
+    // follow the pose predicted one sensor-to-motor latency ahead (using the current velocity) and
+    // evaluate targets that far ahead, so the correction is for where the robot will be when the
+    // command takes effect; trajectories are only compensated with a LookupTableHolonomicFollower
+    // (other followers log a warning)
+    public static boolean COMPENSATE_LATENCY = false;
+    public static double COMMAND_LATENCY = 0.003; // s; from the motor write to the hub applying it
+    public static double LATENCY_SMOOTHING = 0.1; // weight of the newest cycle in the latency average
+
+    private static final String TAG = "TrajectorySequenceRunner";
 
     private final TrajectoryFollower follower;
 
@@ -51,22 +66,70 @@ public class TrajectorySequenceRunner {
     private int lastSegmentIndex;
 
     private Pose2d lastPoseError = new Pose2d();
+    private Pose2d lastTargetPose;
+
+    private @Nullable TrajectoryLookupTable currentLookupTable;
+    private final double[] lookupTarget = new double[TrajectoryLookupTable.STRIDE];
+
+    // markers of the current segment (sorted by time) and the index of the next one to fire
+    private double[] markerTimes = new double[0];
+    private MarkerCallback[] markerCallbacks = new MarkerCallback[0];
+    private int markerCursor;
+
+    private final MarkerExecutor markerExecutor = new MarkerExecutor();
 
-    List<TrajectoryMarker> remainingMarkers = new ArrayList<>();
+    private double loopLatency; // s; smoothed, without COMMAND_LATENCY
+    private final double[] predictedPose = new double[3];
+    private boolean warnedUncompensated;
 
     private final FtcDashboard dashboard;
-    private final LinkedList<Pose2d> poseHistory = new LinkedList<>();
+    private final @Nullable TelemetryPublisher telemetryPublisher;
+
+    private static final LoopTimer.Phase[] PHASES = LoopTimer.Phase.values();
+
+    // positions of the timing summary labels (see buildTimingSummaryKeys())
+    private static final int LOOP_LABEL = 0;
+    private static final int UPDATE_LABEL = 1;
+    private static final int MARKER_CALLBACK_LABEL = 2;
+    private static final int ASYNC_MARKER_CALLBACK_LABEL = 3;
+    private static final int FIRST_PHASE_LABEL = 4;
+
+    private final LoopTimer loopTimer;
+    private final double[] timingSummary;
 
     public TrajectorySequenceRunner(TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients) {
+        this(follower, headingPIDCoefficients, new LoopTimer());
+    }
+
+    public TrajectorySequenceRunner(TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, LoopTimer loopTimer) {
+        this(follower, headingPIDCoefficients, loopTimer, NanoClock.system());
+    }
+
+    /**
+     * @param clock clock used to time the segments (e.g., a simulated clock when running off the
+     *              robot)
+     */
+    public TrajectorySequenceRunner(TrajectoryFollower follower, PIDCoefficients headingPIDCoefficients, LoopTimer loopTimer, NanoClock clock) {
         this.follower = follower;
+        this.loopTimer = loopTimer;
+        this.clock = clock;
 
         turnController = new PIDFController(headingPIDCoefficients);
         turnController.setInputBounds(0, 2 * Math.PI);
 
-        clock = NanoClock.system();
+        String[] timingSummaryKeys = buildTimingSummaryKeys();
+        timingSummary = new double[timingSummaryKeys.length];
 
+        // the dashboard only exists when running on the robot controller
         dashboard = FtcDashboard.getInstance();
-        dashboard.setTelemetryTransmissionInterval(25);
+        if (dashboard != null) {
+            dashboard.setTelemetryTransmissionInterval(25);
+
+            telemetryPublisher = new TelemetryPublisher(dashboard, timingSummaryKeys);
+            telemetryPublisher.start();
+        } else {
+            telemetryPublisher = null;
+        }
     }
 
     public void followTrajectorySequenceAsync(TrajectorySequence trajectorySequence) {
@@ -81,20 +144,24 @@ public class TrajectorySequenceRunner {
         Pose2d targetPose = null;
         DriveSignal driveSignal = null;
 
-        TelemetryPacket packet = new TelemetryPacket();
-        Canvas fieldOverlay = packet.fieldOverlay();
-
         SequenceSegment currentSegment = null;
 
+        double latency = updateLatency();
+
+        // surfaces async marker failures even when no further markers are dispatched
+        markerExecutor.checkFailure();
+
         if (currentTrajectorySequence != null) {
             if (currentSegmentIndex >= currentTrajectorySequence.size()) {
-                for (TrajectoryMarker marker : remainingMarkers) {
-                    marker.getCallback().onMarkerReached();
-                }
+                loopTimer.mark(LoopTimer.Phase.FOLLOWER);
+
+                fireMarkers(Double.POSITIVE_INFINITY);
 
-                remainingMarkers.clear();
+                loopTimer.mark(LoopTimer.Phase.MARKERS);
 
                 currentTrajectorySequence = null;
+
+                markerExecutor.checkFailure();
             }
 
             if (currentTrajectorySequence == null)
@@ -109,23 +176,50 @@ public class TrajectorySequenceRunner {
                 currentSegmentStartTime = now;
                 lastSegmentIndex = currentSegmentIndex;
 
-                for (TrajectoryMarker marker : remainingMarkers) {
-                    marker.getCallback().onMarkerReached();
-                }
-
-                remainingMarkers.clear();
+                fireMarkers(Double.POSITIVE_INFINITY);
 
-                remainingMarkers.addAll(currentSegment.getMarkers());
-                Collections.sort(remainingMarkers, (t1, t2) -> Double.compare(t1.getTime(), t2.getTime()));
+                markerTimes = currentTrajectorySequence.getMarkerTimes(currentSegmentIndex);
+                markerCallbacks = currentTrajectorySequence.getMarkerCallbacks(currentSegmentIndex);
+                markerCursor = 0;
             }
 
             double deltaTime = now - currentSegmentStartTime;
 
+            double lookahead = COMPENSATE_LATENCY ? latency : 0.0;
+            if (COMPENSATE_LATENCY) {
+                predictPose(poseEstimate, poseVelocity, latency);
+            }
+
             if (currentSegment instanceof TrajectorySegment) {
-                Trajectory currentTrajectory = ((TrajectorySegment) currentSegment).getTrajectory();
+                TrajectorySegment trajectorySegment = (TrajectorySegment) currentSegment;
+                // markers are fired by fireMarkers(), so the follower gets the trajectory without them
+                Trajectory currentTrajectory = trajectorySegment.getFollowerTrajectory();
+
+                if (isNewTransition) {
+                    if (USE_LOOKUP_TABLES && follower instanceof LookupTableHolonomicFollower) {
+                        currentLookupTable = trajectorySegment.getLookupTable();
+                        ((LookupTableHolonomicFollower) follower).followTrajectory(
+                                currentTrajectory, currentLookupTable);
+                    } else {
+                        currentLookupTable = null;
+                        follower.followTrajectory(currentTrajectory);
+                    }
+                }
 
-                if (isNewTransition)
-                    follower.followTrajectory(currentTrajectory);
+                if (follower instanceof LookupTableHolonomicFollower) {
+                    LookupTableHolonomicFollower lookupTableFollower = (LookupTableHolonomicFollower) follower;
+                    lookupTableFollower.setLookahead(lookahead);
+                    if (COMPENSATE_LATENCY) {
+                        lookupTableFollower.setPredictedPose(predictedPose);
+                    } else {
+                        lookupTableFollower.clearPredictedPose();
+                    }
+                } else if (COMPENSATE_LATENCY && !warnedUncompensated) {
+                    warnedUncompensated = true;
+                    RobotLog.ww(TAG, "COMPENSATE_LATENCY only compensates trajectories with a "
+                            + "LookupTableHolonomicFollower; %s trajectories are followed uncompensated",
+                            follower.getClass().getSimpleName());
+                }
 
                 if (!follower.isFollowing()) {
                     currentSegmentIndex++;
@@ -136,13 +230,19 @@ public class TrajectorySequenceRunner {
                     lastPoseError = follower.getLastError();
                 }
 
-                targetPose = currentTrajectory.get(deltaTime);
+                if (currentLookupTable != null) {
+                    currentLookupTable.get(deltaTime, lookupTarget);
+                    targetPose = new Pose2d(lookupTarget[0], lookupTarget[1], Angle.norm(lookupTarget[2]));
+                } else {
+                    targetPose = currentTrajectory.get(deltaTime);
+                }
             } else if (currentSegment instanceof TurnSegment) {
-                MotionState targetState = ((TurnSegment) currentSegment).getMotionProfile().get(deltaTime);
+                MotionState targetState = ((TurnSegment) currentSegment).getMotionProfile().get(deltaTime + lookahead);
 
                 turnController.setTargetPosition(targetState.getX());
 
-                double correction = turnController.update(poseEstimate.getHeading());
+                double correction = turnController.update(
+                        COMPENSATE_LATENCY ? predictedPose[2] : poseEstimate.getHeading());
 
                 double targetOmega = targetState.getV();
                 double targetAlpha = targetState.getA();
@@ -172,102 +272,166 @@ public class TrajectorySequenceRunner {
                 }
             }
 
-            while (remainingMarkers.size() > 0 && deltaTime > remainingMarkers.get(0).getTime()) {
-                remainingMarkers.get(0).getCallback().onMarkerReached();
-                remainingMarkers.remove(0);
-            }
-        }
+            loopTimer.mark(LoopTimer.Phase.FOLLOWER);
 
-        poseHistory.add(poseEstimate);
+            fireMarkers(deltaTime);
 
-        if (POSE_HISTORY_LIMIT > -1 && poseHistory.size() > POSE_HISTORY_LIMIT) {
-            poseHistory.removeFirst();
+            loopTimer.mark(LoopTimer.Phase.MARKERS);
+        } else {
+            loopTimer.mark(LoopTimer.Phase.FOLLOWER);
         }
 
-        packet.put("x", poseEstimate.getX());
-        packet.put("y", poseEstimate.getY());
-        packet.put("heading (deg)", Math.toDegrees(poseEstimate.getHeading()));
+        lastTargetPose = targetPose;
 
-        packet.put("xError", getLastPoseError().getX());
-        packet.put("yError", getLastPoseError().getY());
-        packet.put("headingError (deg)", Math.toDegrees(getLastPoseError().getHeading()));
+        boolean report = loopTimer.shouldReport();
+        if (report) {
+            computeTimingSummary();
+        }
 
-        draw(fieldOverlay, currentTrajectorySequence, currentSegment, targetPose, poseEstimate);
+        // rendering happens on the publisher thread
+        if (telemetryPublisher != null) {
+            telemetryPublisher.submit(
+                    poseEstimate, getLastPoseError(), targetPose,
+                    currentTrajectorySequence, lastSegmentIndex,
+                    report ? timingSummary : null
+            );
+        }
 
-        dashboard.sendTelemetryPacket(packet);
+        loopTimer.mark(LoopTimer.Phase.TELEMETRY);
 
         return driveSignal;
     }
 
-    private void draw(
-            Canvas fieldOverlay,
-            TrajectorySequence sequence, SequenceSegment currentSegment,
-            Pose2d targetPose, Pose2d poseEstimate
-    ) {
-        if (sequence != null) {
-            for (int i = 0; i < sequence.size(); i++) {
-                SequenceSegment segment = sequence.get(i);
-
-                if (segment instanceof TrajectorySegment) {
-                    fieldOverlay.setStrokeWidth(1);
-                    fieldOverlay.setStroke(COLOR_INACTIVE_TRAJECTORY);
-
-                    DashboardUtil.drawSampledPath(fieldOverlay, ((TrajectorySegment) segment).getTrajectory().getPath());
-                } else if (segment instanceof TurnSegment) {
-                    Pose2d pose = segment.getStartPose();
-
-                    fieldOverlay.setFill(COLOR_INACTIVE_TURN);
-                    fieldOverlay.fillCircle(pose.getX(), pose.getY(), 2);
-                } else if (segment instanceof WaitSegment) {
-                    Pose2d pose = segment.getStartPose();
-
-                    fieldOverlay.setStrokeWidth(1);
-                    fieldOverlay.setStroke(COLOR_INACTIVE_WAIT);
-                    fieldOverlay.strokeCircle(pose.getX(), pose.getY(), 3);
-                }
-            }
+    /**
+     * Updates the smoothed loop latency from the last complete cycle and returns the total latency
+     * from the sensor reads to the motors acting on the command. The pose is read at the start of a
+     * cycle and the command is written at the end of it (the update time), then held for one loop
+     * period, so on average it acts half a period later, plus COMMAND_LATENCY in the hub.
+     */
+    private double updateLatency() {
+        long loopNanos = loopTimer.getLastLoopNanos();
+        if (loopNanos > 0) {
+            double sample = (loopTimer.getLastUpdateNanos() + 0.5 * loopNanos) * 1e-9;
+            loopLatency = loopLatency == 0.0 ? sample : loopLatency + LATENCY_SMOOTHING * (sample - loopLatency);
         }
+        return loopLatency + COMMAND_LATENCY;
+    }
 
-        if (currentSegment != null) {
-            if (currentSegment instanceof TrajectorySegment) {
-                Trajectory currentTrajectory = ((TrajectorySegment) currentSegment).getTrajectory();
-
-                fieldOverlay.setStrokeWidth(1);
-                fieldOverlay.setStroke(COLOR_ACTIVE_TRAJECTORY);
+    /**
+     * Fills predictedPose with the pose {@code latency} seconds ahead assuming the current robot
+     * velocity stays constant (or the current pose if there is no velocity).
+     */
+    private void predictPose(Pose2d poseEstimate, @Nullable Pose2d poseVelocity, double latency) {
+        predictedPose[0] = poseEstimate.getX();
+        predictedPose[1] = poseEstimate.getY();
+        predictedPose[2] = poseEstimate.getHeading();
+        if (poseVelocity != null) {
+            KinematicsUtil.relativeOdometryUpdate(predictedPose, poseVelocity.getX() * latency,
+                    poseVelocity.getY() * latency, poseVelocity.getHeading() * latency);
+        }
+    }
 
-                DashboardUtil.drawSampledPath(fieldOverlay, currentTrajectory.getPath());
-            } else if (currentSegment instanceof TurnSegment) {
-                Pose2d pose = currentSegment.getStartPose();
+    /**
+     * Dispatches the callbacks of the current segment's markers that are due before {@code time} (in
+     * order).
+     */
+    private void fireMarkers(double time) {
+        while (markerCursor < markerTimes.length && time > markerTimes[markerCursor]) {
+            // advance first so a callback that throws isn't run again
+            markerExecutor.execute(markerCallbacks[markerCursor++], ASYNC_MARKERS);
+        }
+    }
 
-                fieldOverlay.setFill(COLOR_ACTIVE_TURN);
-                fieldOverlay.fillCircle(pose.getX(), pose.getY(), 3);
-            } else if (currentSegment instanceof WaitSegment) {
-                Pose2d pose = currentSegment.getStartPose();
+    private static String[] buildTimingSummaryKeys() {
+        LoopTimer.Phase[] phases = LoopTimer.Phase.values();
+        String[] labels = new String[FIRST_PHASE_LABEL + phases.length];
+        labels[LOOP_LABEL] = "loop";
+        labels[UPDATE_LABEL] = "update";
+        labels[MARKER_CALLBACK_LABEL] = "markerCallback";
+        labels[ASYNC_MARKER_CALLBACK_LABEL] = "asyncMarkerCallback";
+        for (int i = 0; i < phases.length; i++) {
+            labels[FIRST_PHASE_LABEL + i] = phases[i].getLabel();
+        }
 
-                fieldOverlay.setStrokeWidth(1);
-                fieldOverlay.setStroke(COLOR_ACTIVE_WAIT);
-                fieldOverlay.strokeCircle(pose.getX(), pose.getY(), 3);
-            }
+        String[] keys = new String[3 * labels.length + 2];
+        for (int i = 0; i < labels.length; i++) {
+            keys[3 * i] = labels[i] + " p50 (ms)";
+            keys[3 * i + 1] = labels[i] + " p99 (ms)";
+            keys[3 * i + 2] = labels[i] + " max (ms)";
         }
+        keys[3 * labels.length] = "marker overruns";
+        keys[3 * labels.length + 1] = "latency (ms)";
+        return keys;
+    }
 
-        if (targetPose != null) {
-            fieldOverlay.setStrokeWidth(1);
-            fieldOverlay.setStroke("#4CAF50");
-            DashboardUtil.drawRobot(fieldOverlay, targetPose);
+    private void computeTimingSummary() {
+        putHistogram(LOOP_LABEL, loopTimer.getLoopHistogram());
+        putHistogram(UPDATE_LABEL, loopTimer.getUpdateHistogram());
+        putHistogram(MARKER_CALLBACK_LABEL, markerExecutor.getInlineHistogram());
+        putTimes(ASYNC_MARKER_CALLBACK_LABEL, markerExecutor.getAsyncPercentile(0.5),
+                markerExecutor.getAsyncPercentile(0.99), markerExecutor.getAsyncMax());
+        for (int i = 0; i < PHASES.length; i++) {
+            putHistogram(FIRST_PHASE_LABEL + i, loopTimer.getPhaseHistogram(PHASES[i]));
         }
+        timingSummary[timingSummary.length - 2] = markerExecutor.getOverrunCount();
+        timingSummary[timingSummary.length - 1] = (loopLatency + COMMAND_LATENCY) * 1e3;
+    }
 
-        fieldOverlay.setStroke("#3F51B5");
-        DashboardUtil.drawPoseHistory(fieldOverlay, poseHistory);
+    private void putHistogram(int index, LatencyHistogram histogram) {
+        putTimes(index, histogram.getPercentile(0.5), histogram.getPercentile(0.99), histogram.getMax());
+    }
 
-        fieldOverlay.setStroke("#3F51B5");
-        DashboardUtil.drawRobot(fieldOverlay, poseEstimate);
+    /**
+     * Puts the times (in nanoseconds) for the label at {@code index}.
+     */
+    private void putTimes(int index, long p50, long p99, long max) {
+        timingSummary[3 * index] = p50 * 1e-6;
+        timingSummary[3 * index + 1] = p99 * 1e-6;
+        timingSummary[3 * index + 2] = max * 1e-6;
     }
 
     public Pose2d getLastPoseError() {
         return lastPoseError;
     }
 
+    /**
+     * Target pose of the last update (null if no sequence was being followed).
+     */
+    public @Nullable Pose2d getLastTargetPose() {
+        return lastTargetPose;
+    }
+
     public boolean isBusy() {
         return currentTrajectorySequence != null;
     }
+
+    /**
+     * Estimated latency from the sensor reads to the motors acting on the command in seconds (see
+     * COMPENSATE_LATENCY).
+     */
+    public double getLatency() {
+        return loopLatency + COMMAND_LATENCY;
+    }
+
+    /**
+     * Stops the telemetry publisher thread. Iterative op modes must call this (usually through the
+     * drive's stop()) since the thread otherwise outlives them.
+     */
+    public void stop() {
+        if (telemetryPublisher != null) {
+            telemetryPublisher.stop();
+        }
+    }
+
+    public MarkerExecutor getMarkerExecutor() {
+        return markerExecutor;
+    }
+
+    public LoopTimer getLoopTimer() {
+        return loopTimer;
+    }
+
+    public @Nullable TelemetryPublisher getTelemetryPublisher() {
+        return telemetryPublisher;
+    }
 }
@@ -2,19 +2,55 @@ package org.firstinspires.ftc.teamcode.trajectorysequence.sequencesegment;
 
 import com.acmerobotics.roadrunner.trajectory.Trajectory;
 
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectoryLookupTable;
+
 import java.util.Collections;
 
 public final class TrajectorySegment extends SequenceSegment {
     private final Trajectory trajectory;
+    private final Trajectory followerTrajectory;
+
+    private volatile TrajectoryLookupTable lookupTable;
 
     public TrajectorySegment(Trajectory trajectory) {
         // Note: Markers are already stored in the `Trajectory` itself.
         // This class should not hold any markers
         super(trajectory.duration(), trajectory.start(), trajectory.end(), Collections.emptyList());
         this.trajectory = trajectory;
+        this.followerTrajectory = trajectory.getMarkers().isEmpty()
+                ? trajectory : new Trajectory(trajectory.getPath(), trajectory.getProfile(), Collections.emptyList());
     }
 
     public Trajectory getTrajectory() {
         return this.trajectory;
     }
+
+    /**
+     * Returns the trajectory without its markers. TrajectorySequenceRunner dispatches the markers
+     * itself, so this is what it hands to the follower (which would otherwise fire them too).
+     */
+    public Trajectory getFollowerTrajectory() {
+        return this.followerTrajectory;
+    }
+
+    /**
+     * Returns the lookup table of the trajectory, building it on first use.
+     */
+    public TrajectoryLookupTable getLookupTable() {
+        TrajectoryLookupTable table = lookupTable;
+        if (table == null) {
+            synchronized (this) {
+                table = lookupTable;
+                if (table == null) {
+                    table = new TrajectoryLookupTable(trajectory);
+                    lookupTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    public boolean hasLookupTable() {
+        return lookupTable != null;
+    }
 }
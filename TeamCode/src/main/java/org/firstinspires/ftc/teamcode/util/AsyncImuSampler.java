@@ -0,0 +1,121 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.qualcomm.hardware.bosch.BNO055IMU;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples a BNO055 IMU on a dedicated background thread so the control loop never blocks on I2C.
+ * The most recent heading and z rotation rate are published through a lock-free single-writer
+ * slot (a sequence lock over primitive fields); readers copy the latest sample into their own
+ * {@link Sample} instance without blocking the writer or allocating.
+ *
+ * The sampler thread stops on its own once the thread that created it terminates. That covers
+ * LinearOpModes, whose thread ends with the op mode, but an iterative OpMode is created on the
+ * long-lived event loop thread, so it must call {@link #stop()} (e.g., through
+ * SampleMecanumDrive.stop() in its stop() method) or the sampler keeps reading the IMU.
+ */
+public class AsyncImuSampler implements Runnable {
+
+    /**
+     * Copy of a published IMU reading.
+     */
+    public static class Sample {
+        public double heading; // rad
+        public double headingVelocity; // rad/s
+        public long timestampNanos; // System.nanoTime() when the reading completed
+    }
+
+    private final BNO055IMU imu;
+    private final long periodNanos;
+    private final Thread owner;
+    private final Thread thread;
+
+    private volatile boolean running;
+
+    // sequence lock: the sequence is odd while the writer is updating the slot
+    private volatile long sequence;
+    private volatile double heading;
+    private volatile double headingVelocity;
+    private volatile long timestampNanos;
+
+    /**
+     * @param imu initialized IMU
+     * @param rate sample rate in Hz
+     */
+    public AsyncImuSampler(BNO055IMU imu, double rate) {
+        this.imu = imu;
+        this.periodNanos = (long) (1e9 / rate);
+        this.owner = Thread.currentThread();
+
+        thread = new Thread(this, "AsyncImuSampler");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        long nextSampleTime = System.nanoTime();
+        while (running && owner.isAlive() && !Thread.currentThread().isInterrupted()) {
+            double newHeading = imu.getAngularOrientation().firstAngle;
+            double newHeadingVelocity = imu.getAngularVelocity().zRotationRate;
+            long now = System.nanoTime();
+
+            sequence++;
+            heading = newHeading;
+            headingVelocity = newHeadingVelocity;
+            timestampNanos = now;
+            sequence++;
+
+            nextSampleTime += periodNanos;
+            long sleepNanos = nextSampleTime - System.nanoTime();
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(sleepNanos);
+            } else {
+                // overran the period; don't try to catch up with a burst of reads
+                nextSampleTime = System.nanoTime();
+            }
+        }
+        running = false;
+    }
+
+    /**
+     * Copies the most recent reading into {@code sample}.
+     *
+     * @return false if no reading has been published yet
+     */
+    public boolean read(Sample sample) {
+        long before, after;
+        do {
+            before = sequence;
+            sample.heading = heading;
+            sample.headingVelocity = headingVelocity;
+            sample.timestampNanos = timestampNanos;
+            after = sequence;
+        } while ((before & 1) != 0 || before != after);
+        return before != 0;
+    }
+
+    /**
+     * Age of the most recent reading in seconds (infinite if there is none).
+     */
+    public double getSampleAge() {
+        if (sequence == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (System.nanoTime() - timestampNanos) * 1e-9;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -26,10 +26,23 @@ public class DashboardUtil {
         canvas.strokePolyline(xPoints, yPoints);
     }
 
-    public static void drawSampledPath(Canvas canvas, Path path, double resolution) {
-        int samples = (int) Math.ceil(path.length() / resolution);
-        double[] xPoints = new double[samples];
-        double[] yPoints = new double[samples];
+    /**
+     * Number of samples used to draw {@code path} at the given resolution.
+     */
+    public static int getSampleCount(Path path, double resolution) {
+        return Math.max(2, (int) Math.ceil(path.length() / resolution));
+    }
+
+    public static int getSampleCount(Path path) {
+        return getSampleCount(path, DEFAULT_RESOLUTION);
+    }
+
+    /**
+     * Samples {@code path} at evenly spaced displacements into the provided arrays (whose length
+     * determines the number of samples).
+     */
+    public static void samplePath(Path path, double[] xPoints, double[] yPoints) {
+        int samples = xPoints.length;
         double dx = path.length() / (samples - 1);
         for (int i = 0; i < samples; i++) {
             double displacement = i * dx;
@@ -37,6 +50,22 @@ public class DashboardUtil {
             xPoints[i] = pose.getX();
             yPoints[i] = pose.getY();
         }
+    }
+
+    public static void drawPoseHistory(Canvas canvas, PoseHistory poseHistory) {
+        // the canvas holds on to the arrays until the packet is sent, so the ring buffer can't be
+        // handed over directly
+        double[] xPoints = new double[poseHistory.size()];
+        double[] yPoints = new double[poseHistory.size()];
+        poseHistory.copyPoints(xPoints, yPoints);
+        canvas.strokePolyline(xPoints, yPoints);
+    }
+
+    public static void drawSampledPath(Canvas canvas, Path path, double resolution) {
+        int samples = getSampleCount(path, resolution);
+        double[] xPoints = new double[samples];
+        double[] yPoints = new double[samples];
+        samplePath(path, xPoints, yPoints);
         canvas.strokePolyline(xPoints, yPoints);
     }
 
@@ -7,16 +7,20 @@ import com.qualcomm.robotcore.hardware.DcMotorSimple;
 /**
  * Wraps a motor instance to provide corrected velocity counts and allow reversing independently of the corresponding
  * slot's motor direction
+ *
+ * Every getCurrentPosition() call feeds an {@link EncoderVelocityEstimator} with the position and the clock's time.
+ * When the encoder is read from the bulk cache, pass {@link HardwareSnapshot#getEncoderClock()} as the clock so that
+ * samples are timestamped with the bulk read rather than the time of the call.
+ *
+ * Subclasses can read the counts from somewhere other than a motor port (e.g., a simulator) by overriding
+ * {@link #readRawPosition()} and {@link #readRawVelocity()}.
  */
 public class Encoder {
     private final static int CPS_STEP = 0x10000;
 
     private static double inverseOverflow(double input, double estimate) {
-        double real = input;
-        while (Math.abs(estimate - real) > CPS_STEP / 2.0) {
-            real += Math.signum(estimate - real) * CPS_STEP;
-        }
-        return real;
+        // the hub reports velocity modulo CPS_STEP; pick the alias closest to the estimate
+        return input + CPS_STEP * Math.rint((estimate - input) / CPS_STEP);
     }
 
     public enum Direction {
@@ -39,31 +43,48 @@ public class Encoder {
 
     private Direction direction;
 
-    private int lastPosition;
-    private double velocityEstimate;
-    private double lastUpdateTime;
+    private final EncoderVelocityEstimator velocityEstimator = new EncoderVelocityEstimator();
 
     public Encoder(DcMotorEx motor, NanoClock clock) {
         this.motor = motor;
         this.clock = clock;
 
         this.direction = Direction.FORWARD;
-
-        this.lastPosition = 0;
-        this.velocityEstimate = 0.0;
-        this.lastUpdateTime = clock.seconds();
     }
 
     public Encoder(DcMotorEx motor) {
         this(motor, NanoClock.system());
     }
 
+    /**
+     * Creates an encoder without a motor; the subclass must override the raw reads.
+     */
+    protected Encoder(NanoClock clock) {
+        this(null, clock);
+    }
+
     public Direction getDirection() {
         return direction;
     }
 
     private int getMultiplier() {
-        return getDirection().getMultiplier() * (motor.getDirection() == DcMotorSimple.Direction.FORWARD ? 1 : -1);
+        boolean motorForward = motor == null || motor.getDirection() == DcMotorSimple.Direction.FORWARD;
+        return getDirection().getMultiplier() * (motorForward ? 1 : -1);
+    }
+
+    /**
+     * Position in counts, before applying the directions.
+     */
+    protected int readRawPosition() {
+        return motor.getCurrentPosition();
+    }
+
+    /**
+     * Velocity in counts per second as reported by the hub (i.e., modulo 2^16), before applying
+     * the directions.
+     */
+    protected double readRawVelocity() {
+        return motor.getVelocity();
     }
 
     /**
@@ -76,23 +97,24 @@ public class Encoder {
 
     public int getCurrentPosition() {
         int multiplier = getMultiplier();
-        int currentPosition = motor.getCurrentPosition() * multiplier;
-        if (currentPosition != lastPosition) {
-            double currentTime = clock.seconds();
-            double dt = currentTime - lastUpdateTime;
-            velocityEstimate = (currentPosition - lastPosition) / dt;
-            lastPosition = currentPosition;
-            lastUpdateTime = currentTime;
-        }
+        int currentPosition = readRawPosition() * multiplier;
+        velocityEstimator.update(currentPosition, clock.seconds());
         return currentPosition;
     }
 
+    /**
+     * Velocity estimated from the positions read so far (see {@link EncoderVelocityEstimator}).
+     */
+    public double getVelocityEstimate() {
+        return velocityEstimator.getVelocity();
+    }
+
     public double getRawVelocity() {
         int multiplier = getMultiplier();
-        return motor.getVelocity() * multiplier;
+        return readRawVelocity() * multiplier;
     }
 
     public double getCorrectedVelocity() {
-        return inverseOverflow(getRawVelocity(), velocityEstimate);
+        return inverseOverflow(getRawVelocity(), velocityEstimator.getVelocity());
     }
 }
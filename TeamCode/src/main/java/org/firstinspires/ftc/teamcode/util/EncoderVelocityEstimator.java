@@ -0,0 +1,127 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.dashboard.config.Config;
+
+/**
+ * Estimates an encoder's velocity from timestamped position samples. Every sample counts, including
+ * ones where the position didn't change, so the estimate decays to zero when the wheel stops instead
+ * of holding the last nonzero difference. Samples less than MIN_SAMPLE_INTERVAL after the last one
+ * are ignored: with a bulk-read clock (see HardwareSnapshot.getEncoderClock()) reading the same bulk
+ * data twice gives the same timestamp, and with the system clock the second read of a cycle would
+ * otherwise add a zero-motion sample that pulls the estimate toward zero.
+ *
+ * The estimate depends on MODE, which can be changed at any time:
+ *   - FINITE_DIFFERENCE: difference of the last two samples (lowest lag, noisiest).
+ *   - LEAST_SQUARES: slope of a line fit through the last WINDOW_SIZE samples, which averages out
+ *     the tick quantization at the cost of about half a window of lag.
+ *   - ALPHA_BETA: alpha-beta tracker with gains ALPHA (position) and BETA (velocity).
+ */
+@Config
+public class EncoderVelocityEstimator {
+    public enum Mode {
+        FINITE_DIFFERENCE,
+        LEAST_SQUARES,
+        ALPHA_BETA
+    }
+
+    public static Mode MODE = Mode.LEAST_SQUARES;
+    public static int WINDOW_SIZE = 4; // samples
+    public static double ALPHA = 0.5;
+    public static double BETA = 0.2;
+    public static double MIN_SAMPLE_INTERVAL = 0.002; // s; shorter than any bulk read cycle
+
+    private static final int MAX_WINDOW_SIZE = 32;
+
+    // ring buffer of the most recent samples
+    private final double[] times = new double[MAX_WINDOW_SIZE];
+    private final double[] positions = new double[MAX_WINDOW_SIZE];
+    private int newest = -1;
+    private int count;
+
+    // alpha-beta state, updated in every mode so switching is seamless
+    private double trackedPosition;
+    private double trackedVelocity;
+
+    private double velocity;
+
+    /**
+     * Adds a position sample (ticks) taken at {@code time} (seconds) and updates the estimate.
+     */
+    public void update(double position, double time) {
+        double sinceLast = count > 0 ? time - times[newest] : Double.POSITIVE_INFINITY;
+        if (sinceLast <= 0.0 || sinceLast < MIN_SAMPLE_INTERVAL) {
+            return;
+        }
+
+        double lastTime = count > 0 ? times[newest] : time;
+        double lastPosition = count > 0 ? positions[newest] : position;
+
+        newest = (newest + 1) % MAX_WINDOW_SIZE;
+        times[newest] = time;
+        positions[newest] = position;
+        count = Math.min(count + 1, MAX_WINDOW_SIZE);
+
+        if (count == 1) {
+            trackedPosition = position;
+            trackedVelocity = 0.0;
+            velocity = 0.0;
+            return;
+        }
+
+        double dt = time - lastTime;
+        double predictedPosition = trackedPosition + trackedVelocity * dt;
+        double residual = position - predictedPosition;
+        trackedPosition = predictedPosition + ALPHA * residual;
+        trackedVelocity += BETA * residual / dt;
+
+        switch (MODE) {
+            case FINITE_DIFFERENCE:
+                velocity = (position - lastPosition) / dt;
+                break;
+            case LEAST_SQUARES:
+                velocity = fitSlope(Math.max(2, Math.min(Math.min(WINDOW_SIZE, MAX_WINDOW_SIZE), count)));
+                break;
+            case ALPHA_BETA:
+                velocity = trackedVelocity;
+                break;
+        }
+    }
+
+    /**
+     * Least-squares slope of the last {@code n} samples.
+     */
+    private double fitSlope(int n) {
+        // times relative to the newest sample keep the sums well conditioned
+        double t0 = times[newest];
+        double meanTime = 0.0, meanPosition = 0.0;
+        for (int i = 0; i < n; i++) {
+            int index = (newest - i + MAX_WINDOW_SIZE) % MAX_WINDOW_SIZE;
+            meanTime += times[index] - t0;
+            meanPosition += positions[index];
+        }
+        meanTime /= n;
+        meanPosition /= n;
+
+        double covariance = 0.0, variance = 0.0;
+        for (int i = 0; i < n; i++) {
+            int index = (newest - i + MAX_WINDOW_SIZE) % MAX_WINDOW_SIZE;
+            double t = times[index] - t0 - meanTime;
+            covariance += t * (positions[index] - meanPosition);
+            variance += t * t;
+        }
+        return covariance / variance;
+    }
+
+    /**
+     * Velocity estimate in ticks per second (0 until there are two samples).
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public void reset() {
+        newest = -1;
+        count = 0;
+        velocity = 0.0;
+    }
+}
@@ -0,0 +1,115 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Converts a {@link FlightRecorder} log into CSV. This class only depends on the standard library
+ * (and also defines the log format constants used by the recorder) so it can be run on a computer
+ * after pulling the log off the robot, e.g.:
+ * <pre>
+ *   adb pull /sdcard/FIRST/RoadRunner/auto.rrfr
+ *   java FlightRecordReader.java auto.rrfr auto.csv
+ * </pre>
+ * Times in the output are in seconds relative to the first record.
+ */
+public class FlightRecordReader {
+    static final int MAGIC = 0x52524652; // "RRFR"
+    static final int VERSION = 1;
+
+    private static final String[] POSE_COLUMNS = {
+            "x", "y", "heading",
+            "targetX", "targetY", "targetHeading",
+            "errorX", "errorY", "errorHeading",
+            "velX", "velY", "velHeading",
+            "accelX", "accelY", "accelHeading"
+    };
+
+    /**
+     * Size in bytes of a single record for a drive with {@code wheelCount} wheels.
+     */
+    static int getRecordSize(int wheelCount) {
+        return 8 + 4 * (2 * wheelCount + POSE_COLUMNS.length + 1);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FlightRecordReader <log file> [csv file]");
+            System.exit(1);
+        }
+
+        String outputName = args.length > 1 ? args[1] : args[0] + ".csv";
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])));
+             PrintWriter out = new PrintWriter(outputName)) {
+            int records = convert(in, out);
+            System.out.println("wrote " + records + " records to " + outputName);
+        }
+    }
+
+    /**
+     * Reads a log from {@code in} and writes it as CSV (with a header row) to {@code out}.
+     *
+     * @return the number of records converted
+     */
+    public static int convert(DataInputStream in, PrintWriter out) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a flight recorder log");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported flight recorder log version " + version);
+        }
+        int wheelCount = in.readInt();
+        int recordSize = in.readInt();
+        if (recordSize != getRecordSize(wheelCount)) {
+            throw new IOException("corrupt flight recorder log header");
+        }
+
+        StringBuilder header = new StringBuilder("time");
+        for (int i = 0; i < wheelCount; i++) {
+            header.append(",wheelPosition").append(i);
+        }
+        for (int i = 0; i < wheelCount; i++) {
+            header.append(",wheelVelocity").append(i);
+        }
+        for (String column : POSE_COLUMNS) {
+            header.append(',').append(column);
+        }
+        header.append(",voltage");
+        out.println(header);
+
+        int valueCount = 2 * wheelCount + POSE_COLUMNS.length + 1;
+        long startNanos = 0;
+        int records = 0;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            long timestampNanos;
+            try {
+                timestampNanos = in.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            if (records == 0) {
+                startNanos = timestampNanos;
+            }
+
+            line.setLength(0);
+            line.append((timestampNanos - startNanos) * 1e-9);
+            try {
+                for (int i = 0; i < valueCount; i++) {
+                    line.append(',').append(in.readFloat());
+                }
+            } catch (EOFException e) {
+                // the last record was cut off (e.g., the robot lost power)
+                break;
+            }
+            out.println(line);
+            records++;
+        }
+        return records;
+    }
+}
@@ -0,0 +1,260 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.drive.DriveSignal;
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the drive state of every control cycle to a compact fixed-width binary log in the
+ * RoadRunner log folder. Records are packed into preallocated direct buffers on the control thread
+ * (no allocation, no file I/O) and full buffers are handed to a background thread that writes them
+ * out through a {@link FileChannel}. If the writer falls behind and no free buffer is available,
+ * records are dropped (and counted) rather than blocking the control loop.
+ *
+ * The file starts with a header (all values big-endian):
+ * <pre>
+ *   int   magic ('RRFR')
+ *   int   format version
+ *   int   wheel count (n)
+ *   int   record size in bytes
+ * </pre>
+ * followed by records of the form:
+ * <pre>
+ *   long  timestamp (System.nanoTime())
+ *   float wheel positions[n], wheel velocities[n]
+ *   float pose estimate x, y, heading
+ *   float target pose x, y, heading (NaN when idle)
+ *   float last pose error x, y, heading
+ *   float drive signal velocity x, y, heading, acceleration x, y, heading (NaN when idle)
+ *   float battery voltage
+ * </pre>
+ * Use {@link FlightRecordReader} on a computer to convert a log to CSV.
+ *
+ * Opening a recorder prunes old logs according to the {@link LoggingUtil} quota and a single
+ * recording is also capped at that quota. The writer stops on its own (flushing what has been
+ * recorded) once the thread that created the recorder terminates, but call {@link #stop()} at the
+ * end of the op mode to make sure every record makes it to the file.
+ */
+@Config
+public class FlightRecorder implements Runnable {
+    public static int BUFFER_SIZE = 64 * 1024; // bytes
+    public static int BUFFER_COUNT = 4;
+
+    private final int wheelCount;
+    private final int recordSize;
+    private final Thread owner;
+    private final Thread thread;
+
+    private final ArrayBlockingQueue<ByteBuffer> freeBuffers;
+    private final ArrayBlockingQueue<ByteBuffer> fullBuffers;
+    private volatile ByteBuffer currentBuffer;
+
+    private FileChannel channel;
+
+    private volatile boolean running;
+    private volatile long recordCount;
+    private volatile long droppedRecordCount; // written by the control thread
+    private volatile long discardedRecordCount; // written by the writer thread
+    private volatile long bytesWritten;
+
+    /**
+     * @param name log file name (in the RoadRunner log folder)
+     * @param wheelCount number of wheel positions and velocities in each record
+     */
+    public FlightRecorder(String name, int wheelCount) {
+        this.wheelCount = wheelCount;
+        this.recordSize = FlightRecordReader.getRecordSize(wheelCount);
+        this.owner = Thread.currentThread();
+
+        int bufferSize = Math.max(BUFFER_SIZE, recordSize);
+        int bufferCount = Math.max(BUFFER_COUNT, 2);
+        freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        fullBuffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount - 1; i++) {
+            freeBuffers.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+        currentBuffer = ByteBuffer.allocateDirect(bufferSize);
+
+        currentBuffer.putInt(FlightRecordReader.MAGIC);
+        currentBuffer.putInt(FlightRecordReader.VERSION);
+        currentBuffer.putInt(wheelCount);
+        currentBuffer.putInt(recordSize);
+
+        try {
+            channel = new FileOutputStream(LoggingUtil.getLogFile(name)).getChannel();
+        } catch (FileNotFoundException e) {
+            // recording is disabled
+            channel = null;
+        }
+
+        thread = new Thread(this, "FlightRecorder");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        if (channel == null) {
+            return;
+        }
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Flushes the remaining records and closes the file, waiting briefly for the writer to finish.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        handOff();
+        running = false;
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends a record for the current cycle. This never blocks or allocates.
+     *
+     * @return false if the record was dropped (recorder not running or the writer fell behind)
+     */
+    public boolean record(long timestampNanos, double[] wheelPositions, double[] wheelVelocities,
+                          Pose2d poseEstimate, @Nullable Pose2d targetPose, Pose2d poseError,
+                          @Nullable DriveSignal driveSignal, double voltage) {
+        if (!running) {
+            return false;
+        }
+
+        ByteBuffer buffer = currentBuffer;
+        if (buffer == null || buffer.remaining() < recordSize) {
+            if (buffer != null) {
+                handOff();
+            }
+            buffer = freeBuffers.poll();
+            currentBuffer = buffer;
+            if (buffer == null) {
+                droppedRecordCount++;
+                return false;
+            }
+        }
+
+        buffer.putLong(timestampNanos);
+        for (int i = 0; i < wheelCount; i++) {
+            buffer.putFloat((float) wheelPositions[i]);
+        }
+        for (int i = 0; i < wheelCount; i++) {
+            buffer.putFloat((float) wheelVelocities[i]);
+        }
+        putPose(buffer, poseEstimate);
+        putPose(buffer, targetPose);
+        putPose(buffer, poseError);
+        putPose(buffer, driveSignal == null ? null : driveSignal.getVel());
+        putPose(buffer, driveSignal == null ? null : driveSignal.getAccel());
+        buffer.putFloat((float) voltage);
+
+        recordCount++;
+        return true;
+    }
+
+    private static void putPose(ByteBuffer buffer, @Nullable Pose2d pose) {
+        if (pose == null) {
+            buffer.putFloat(Float.NaN);
+            buffer.putFloat(Float.NaN);
+            buffer.putFloat(Float.NaN);
+        } else {
+            buffer.putFloat((float) pose.getX());
+            buffer.putFloat((float) pose.getY());
+            buffer.putFloat((float) pose.getHeading());
+        }
+    }
+
+    private void handOff() {
+        ByteBuffer buffer = currentBuffer;
+        currentBuffer = null;
+        if (buffer != null) {
+            // every buffer is either free, full, or current, so this never fails
+            fullBuffers.offer(buffer);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                ByteBuffer buffer = fullBuffers.poll(100, TimeUnit.MILLISECONDS);
+                if (buffer != null) {
+                    write(buffer);
+                } else if (!owner.isAlive()) {
+                    // the op mode ended without calling stop(); nothing else will touch the
+                    // current buffer now
+                    handOff();
+                    running = false;
+                }
+            }
+
+            // stop() hands off the last buffer before clearing the running flag
+            ByteBuffer buffer;
+            while ((buffer = fullBuffers.poll()) != null) {
+                write(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void write(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            if (bytesWritten + buffer.remaining() <= LoggingUtil.LOG_QUOTA) {
+                while (buffer.hasRemaining()) {
+                    bytesWritten += channel.write(buffer);
+                }
+            } else {
+                discardedRecordCount += buffer.remaining() / recordSize;
+            }
+        } catch (IOException e) {
+            discardedRecordCount += buffer.remaining() / recordSize;
+        }
+        buffer.clear();
+        freeBuffers.offer(buffer);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Number of records that were dropped because no buffer was free, the quota was reached, or a
+     * write failed.
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount + discardedRecordCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,268 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.util.NanoClock;
+import com.qualcomm.hardware.bosch.BNO055IMU;
+import com.qualcomm.hardware.lynx.LynxModule;
+import com.qualcomm.robotcore.hardware.DcMotorEx;
+import com.qualcomm.robotcore.hardware.VoltageSensor;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-shot snapshot of every hardware input used by the drive during one control cycle. The
+ * hubs are switched to {@link LynxModule.BulkCachingMode#MANUAL} and {@link #capture} clears each
+ * hub's cache and issues exactly one bulk read per hub, so encoder reads anywhere else in the cycle
+ * (e.g., tracking wheel encoders) are served from the cache. The snapshot is only written by
+ * {@link #capture}; consumers see it as read-only for the rest of the cycle.
+ *
+ * If an {@link AsyncImuSampler} is attached, the IMU values are taken from its latest sample during
+ * the capture. Otherwise the IMU is read over I2C the first time {@link #getHeading()} or
+ * {@link #getHeadingVelocity()} is called after a capture, so setups that never use the IMU heading
+ * (e.g., three tracking wheels) don't pay for the blocking reads.
+ *
+ * Note that in MANUAL mode the bulk cache is only refreshed when {@link #capture} runs, so it must be
+ * called once per loop before any encoder values are used. This applies to every motor and encoder
+ * on the hubs passed in, including ones op mode code reads for other mechanisms: those reads return
+ * the values of the last capture.
+ *
+ * Subclasses can provide the values from another source (e.g., a simulator) by overriding
+ * {@link #capture} and storing the values with the protected store methods.
+ */
+@Config
+public class HardwareSnapshot {
+    public static double VOLTAGE_READ_PERIOD = 0.5; // s; battery voltage changes slowly
+
+    private final List<LynxModule> modules;
+    private final List<DcMotorEx> motors;
+    private final BNO055IMU imu;
+    private final VoltageSensor voltageSensor;
+
+    private AsyncImuSampler imuSampler;
+    private final AsyncImuSampler.Sample imuSample = new AsyncImuSampler.Sample();
+
+    private final int[] encoderPositions;
+    private final double[] encoderVelocities;
+    private double heading;
+    private double headingVelocity;
+    private boolean hasHeading; // read (or stored) since the last capture
+    private double voltage;
+
+    private long timestampNanos;
+    private long encoderTimestampNanos;
+    private long headingTimestampNanos;
+    private long voltageTimestampNanos;
+    private long cycle;
+    private int readCount;
+
+    public HardwareSnapshot(List<LynxModule> modules, List<DcMotorEx> motors,
+                            @Nullable BNO055IMU imu, VoltageSensor voltageSensor) {
+        this(modules, motors, imu, voltageSensor, motors.size());
+
+        for (int i = 0; i < modules.size(); i++) {
+            modules.get(i).setBulkCachingMode(LynxModule.BulkCachingMode.MANUAL);
+        }
+    }
+
+    /**
+     * Creates a snapshot without any hardware attached; see the class comment.
+     */
+    protected HardwareSnapshot(int motorCount) {
+        this(Collections.<LynxModule>emptyList(), Collections.<DcMotorEx>emptyList(), null, null,
+                motorCount);
+    }
+
+    private HardwareSnapshot(List<LynxModule> modules, List<DcMotorEx> motors,
+                             @Nullable BNO055IMU imu, @Nullable VoltageSensor voltageSensor,
+                             int motorCount) {
+        this.modules = modules;
+        this.motors = motors;
+        this.imu = imu;
+        this.voltageSensor = voltageSensor;
+
+        encoderPositions = new int[motorCount];
+        encoderVelocities = new double[motorCount];
+    }
+
+    /**
+     * Takes the IMU values from {@code imuSampler} instead of reading the IMU synchronously.
+     */
+    public void setImuSampler(@Nullable AsyncImuSampler imuSampler) {
+        this.imuSampler = imuSampler;
+    }
+
+    /**
+     * Reads every hub exactly once and stores the results in this snapshot.
+     */
+    public void capture() {
+        readCount = 0;
+
+        long bulkReadStart = System.nanoTime();
+        for (int i = 0; i < modules.size(); i++) {
+            LynxModule module = modules.get(i);
+            module.clearBulkCache();
+            module.getBulkData();
+            readCount++;
+        }
+        storeEncoderTimestamp(bulkReadStart + (System.nanoTime() - bulkReadStart) / 2);
+
+        // served from the bulk cache
+        for (int i = 0; i < motors.size(); i++) {
+            DcMotorEx motor = motors.get(i);
+            encoderPositions[i] = motor.getCurrentPosition();
+            encoderVelocities[i] = motor.getVelocity();
+        }
+
+        // without a sampler, the IMU is read on demand; see readHeading()
+        hasHeading = false;
+        if (imuSampler != null && imuSampler.read(imuSample)) {
+            storeHeading(imuSample.heading, imuSample.headingVelocity, imuSample.timestampNanos);
+        }
+
+        long now = System.nanoTime();
+        if (cycle == 0 || (now - voltageTimestampNanos) * 1e-9 >= VOLTAGE_READ_PERIOD) {
+            voltage = voltageSensor.getVoltage();
+            voltageTimestampNanos = now;
+            readCount++;
+        }
+
+        completeCapture(now, readCount);
+    }
+
+    private void readHeading() {
+        if (hasHeading || imu == null) {
+            return;
+        }
+        heading = imu.getAngularOrientation().firstAngle;
+        headingVelocity = imu.getAngularVelocity().zRotationRate;
+        headingTimestampNanos = System.nanoTime();
+        hasHeading = true;
+        readCount += 2;
+    }
+
+    protected void storeEncoder(int i, int position, double velocity) {
+        encoderPositions[i] = position;
+        encoderVelocities[i] = velocity;
+    }
+
+    protected void storeEncoderTimestamp(long timestampNanos) {
+        encoderTimestampNanos = timestampNanos;
+    }
+
+    protected void storeHeading(double heading, double headingVelocity, long timestampNanos) {
+        this.heading = heading;
+        this.headingVelocity = headingVelocity;
+        this.headingTimestampNanos = timestampNanos;
+        hasHeading = true;
+    }
+
+    protected void storeVoltage(double voltage) {
+        this.voltage = voltage;
+    }
+
+    /**
+     * Marks the capture taken at {@code timestampNanos} as complete.
+     */
+    protected void completeCapture(long timestampNanos, int readCount) {
+        this.timestampNanos = timestampNanos;
+        this.readCount = readCount;
+        cycle++;
+    }
+
+    /**
+     * Raw encoder position (ticks) of the i-th motor.
+     */
+    public int getEncoderPosition(int i) {
+        return encoderPositions[i];
+    }
+
+    /**
+     * Raw encoder velocity (ticks per second) of the i-th motor.
+     */
+    public double getEncoderVelocity(int i) {
+        return encoderVelocities[i];
+    }
+
+    public int getMotorCount() {
+        return encoderPositions.length;
+    }
+
+    /**
+     * IMU heading (radians, not offset by the drive's external heading). Without a sampler, the
+     * first call after a capture reads the IMU.
+     */
+    public double getHeading() {
+        readHeading();
+        return heading;
+    }
+
+    /**
+     * IMU z rotation rate (radians per second). Without a sampler, the first call after a capture
+     * reads the IMU.
+     */
+    public double getHeadingVelocity() {
+        readHeading();
+        return headingVelocity;
+    }
+
+    /**
+     * Age of the IMU values relative to this snapshot in seconds. This is only significant when an
+     * {@link AsyncImuSampler} is attached; it's 0 for values read on demand (which are newer than
+     * the snapshot) and when the heading hasn't been used since the last capture.
+     */
+    public double getHeadingAge() {
+        return hasHeading ? Math.max(0.0, (timestampNanos - headingTimestampNanos) * 1e-9) : 0.0;
+    }
+
+    public double getVoltage() {
+        return voltage;
+    }
+
+    /**
+     * {@link System#nanoTime()} timestamp taken once all of the reads completed.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Timestamp (same time base as {@link #getTimestampNanos()}) of the middle of the bulk reads, when
+     * the encoder values were sampled.
+     */
+    public long getEncoderTimestampNanos() {
+        return encoderTimestampNanos;
+    }
+
+    /**
+     * Clock that reads {@link #getEncoderTimestampNanos()}, so encoders read from the bulk cache can
+     * be timestamped with the bulk read instead of the time they happened to be read at (see
+     * {@link Encoder}).
+     */
+    public NanoClock getEncoderClock() {
+        return new NanoClock() {
+            @Override
+            public double seconds() {
+                return encoderTimestampNanos * 1e-9;
+            }
+        };
+    }
+
+    /**
+     * Number of completed captures.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * Number of hardware reads the snapshot issued since the last capture: one per bulk read,
+     * voltage read, and IMU value read on demand. This is the snapshot's own tally, not a measured
+     * count of LynxCommands (a single I2C read is itself several commands).
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+}
@@ -0,0 +1,106 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import com.acmerobotics.roadrunner.util.Angle;
+
+/**
+ * Primitive (allocation-free) counterparts of the Road Runner kinematics helpers used in the
+ * control loop. Poses are stored as {@code double[]} arrays in the order x, y, heading.
+ */
+public class KinematicsUtil {
+    private static final double EPSILON = 1e-6;
+
+    /**
+     * Performs a relative odometry update in place. This is equivalent to
+     * {@link com.acmerobotics.roadrunner.kinematics.Kinematics#relativeOdometryUpdate} but mutates
+     * the field pose instead of allocating new {@link com.acmerobotics.roadrunner.geometry.Pose2d}
+     * instances.
+     *
+     * @param fieldPose field pose (x, y, heading) to update
+     * @param dx robot-relative x delta
+     * @param dy robot-relative y delta
+     * @param dtheta heading delta
+     */
+    public static void relativeOdometryUpdate(double[] fieldPose, double dx, double dy, double dtheta) {
+        double sineTerm, cosTerm;
+        if (Math.abs(dtheta) < EPSILON) {
+            sineTerm = 1.0 - dtheta * dtheta / 6.0;
+            cosTerm = dtheta / 2.0;
+        } else {
+            sineTerm = Math.sin(dtheta) / dtheta;
+            cosTerm = (1 - Math.cos(dtheta)) / dtheta;
+        }
+
+        double robotX = sineTerm * dx - cosTerm * dy;
+        double robotY = cosTerm * dx + sineTerm * dy;
+
+        double cos = Math.cos(fieldPose[2]);
+        double sin = Math.sin(fieldPose[2]);
+
+        fieldPose[0] += robotX * cos - robotY * sin;
+        fieldPose[1] += robotX * sin + robotY * cos;
+        fieldPose[2] = Angle.norm(fieldPose[2] + dtheta);
+    }
+
+    /**
+     * Performs a relative odometry update in place by integrating over the cycle with {@code steps}
+     * RK4 steps instead of assuming a constant twist. The robot-relative velocity is assumed to
+     * change linearly from {@code startVelocity} to {@code endVelocity} over the cycle; the
+     * velocities only set the shape of the profile, which is offset so that it integrates exactly to
+     * the measured deltas.
+     *
+     * @param fieldPose field pose (x, y, heading) to update
+     * @param dx robot-relative x delta
+     * @param dy robot-relative y delta
+     * @param dtheta heading delta
+     * @param startVelocity robot-relative velocity (x, y, heading) at the start of the cycle
+     * @param endVelocity robot-relative velocity (x, y, heading) at the end of the cycle
+     * @param dt cycle duration in seconds
+     * @param steps number of integration steps
+     */
+    public static void substepOdometryUpdate(double[] fieldPose, double dx, double dy, double dtheta,
+                                             double[] startVelocity, double[] endVelocity,
+                                             double dt, int steps) {
+        // v(t) = a + b t with b from the velocity readings and a such that the integral is the delta
+        double bx = (endVelocity[0] - startVelocity[0]) / dt;
+        double by = (endVelocity[1] - startVelocity[1]) / dt;
+        double btheta = (endVelocity[2] - startVelocity[2]) / dt;
+        double ax = dx / dt - bx * dt / 2;
+        double ay = dy / dt - by * dt / 2;
+        double atheta = dtheta / dt - btheta * dt / 2;
+
+        double x = fieldPose[0];
+        double y = fieldPose[1];
+        double theta = fieldPose[2];
+
+        double h = dt / steps;
+        for (int i = 0; i < steps; i++) {
+            double t = i * h;
+
+            double vx1 = ax + bx * t, vy1 = ay + by * t, w1 = atheta + btheta * t;
+            double vx2 = vx1 + bx * h / 2, vy2 = vy1 + by * h / 2, w2 = w1 + btheta * h / 2;
+            double vx3 = vx1 + bx * h, vy3 = vy1 + by * h, w3 = w1 + btheta * h;
+
+            // the heading derivative only depends on time, so k2 and k3 share the midpoint velocity
+            double theta1 = theta;
+            double theta2 = theta + h / 2 * w1;
+            double theta3 = theta + h / 2 * w2;
+            double theta4 = theta + h * w2;
+
+            double cos1 = Math.cos(theta1), sin1 = Math.sin(theta1);
+            double cos2 = Math.cos(theta2), sin2 = Math.sin(theta2);
+            double cos3 = Math.cos(theta3), sin3 = Math.sin(theta3);
+            double cos4 = Math.cos(theta4), sin4 = Math.sin(theta4);
+
+            x += h / 6 * ((cos1 * vx1 - sin1 * vy1) + 2 * (cos2 * vx2 - sin2 * vy2)
+                    + 2 * (cos3 * vx2 - sin3 * vy2) + (cos4 * vx3 - sin4 * vy3));
+            y += h / 6 * ((sin1 * vx1 + cos1 * vy1) + 2 * (sin2 * vx2 + cos2 * vy2)
+                    + 2 * (sin3 * vx2 + cos3 * vy2) + (sin4 * vx3 + cos4 * vy3));
+            theta += h / 6 * (w1 + 4 * w2 + w3);
+        }
+
+        fieldPose[0] = x;
+        fieldPose[1] = y;
+        // the heading profile integrates exactly to dtheta
+        fieldPose[2] = Angle.norm(fieldPose[2] + dtheta);
+    }
+}
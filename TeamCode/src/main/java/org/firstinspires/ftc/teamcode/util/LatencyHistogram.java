@@ -0,0 +1,118 @@
+package org.firstinspires.ftc.teamcode.util;
+
+/**
+ * Allocation-free latency histogram over a sliding window of the most recent samples. Values (in
+ * nanoseconds) are counted in fixed log-linear buckets in the style of HdrHistogram: each power of
+ * two is split into 32 linear sub-buckets, so percentiles are accurate to about 3% across the whole
+ * range (up to 2^34 ns, ~17.2 s; larger values land in the last bucket). The raw samples are kept in
+ * a ring buffer so that samples leaving the window can be removed from the bucket counts and the
+ * maximum can be reported exactly.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 33;
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final long[] window;
+    private final int[] counts = new int[BUCKET_COUNT];
+
+    private int head;
+    private int size;
+
+    /**
+     * @param windowSize number of most recent samples the statistics are computed over
+     */
+    public LatencyHistogram(int windowSize) {
+        window = new long[windowSize];
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) Math.max(value, 0);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Records a sample, evicting the oldest one if the window is full.
+     */
+    public void record(long nanos) {
+        if (size == window.length) {
+            counts[bucketIndex(window[head])]--;
+        } else {
+            size++;
+        }
+        window[head] = nanos;
+        counts[bucketIndex(nanos)]++;
+        head = (head + 1) % window.length;
+    }
+
+    /**
+     * Returns the value (in nanoseconds) at or below which the given fraction of the samples in the
+     * window fall (e.g., 0.99 for p99), rounded up to the containing bucket.
+     */
+    public long getPercentile(double fraction) {
+        if (size == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * size));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the exact maximum sample (in nanoseconds) in the window.
+     */
+    public long getMax() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, window[i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the most recently recorded sample (in nanoseconds).
+     */
+    public long getLast() {
+        if (size == 0) {
+            return 0;
+        }
+        return window[(head + window.length - 1) % window.length];
+    }
+
+    public int getCount() {
+        return size;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        head = 0;
+        size = 0;
+    }
+}
@@ -14,7 +14,7 @@ public class LoggingUtil {
     public static final File ROAD_RUNNER_FOLDER =
             new File(AppUtil.ROOT_FOLDER + "/RoadRunner/");
 
-    private static final long LOG_QUOTA = 25 * 1024 * 1024; // 25MB log quota for now
+    static final long LOG_QUOTA = 25 * 1024 * 1024; // 25MB log quota for now
 
     private static void buildLogList(List<File> logFiles, File dir) {
         for (File file : dir.listFiles()) {
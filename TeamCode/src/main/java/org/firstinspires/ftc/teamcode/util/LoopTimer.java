@@ -0,0 +1,172 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.dashboard.config.Config;
+import com.acmerobotics.roadrunner.util.NanoClock;
+
+/**
+ * Lightweight, allocation-free timer for the phases of a control loop. Call {@link #startCycle()}
+ * at the top of the loop, {@link #mark(Phase)} after each phase completes (the time since the
+ * previous mark is attributed to that phase), and {@link #endCycle()} at the bottom. Per-phase
+ * times, the time spent inside the loop body, and the loop period are recorded into
+ * {@link LatencyHistogram}s over a sliding window of the last WINDOW_SIZE cycles.
+ *
+ * Times come from {@link System#nanoTime()} unless a clock is given (e.g., a simulated clock, so
+ * that timing and everything derived from it is deterministic in simulation).
+ */
+@Config
+public class LoopTimer {
+    public static int WINDOW_SIZE = 1000; // cycles
+    public static double REPORT_PERIOD = 1.0; // s; how often summaries are published
+
+    /**
+     * Phases of the drive control loop.
+     */
+    public enum Phase {
+        SNAPSHOT("snapshot"),
+        LOCALIZATION("localization"),
+        FOLLOWER("follower"),
+        MARKERS("markers"),
+        TELEMETRY("telemetry"),
+        MOTOR_WRITE("motorWrite");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final LatencyHistogram loopHistogram;
+    private final LatencyHistogram updateHistogram;
+    private final LatencyHistogram[] phaseHistograms = new LatencyHistogram[PHASES.length];
+    private final long[] phaseNanos = new long[PHASES.length];
+
+    private final @Nullable NanoClock clock;
+
+    private long cycleStart;
+    private boolean hasCycleStart;
+    private long lastLoopNanos;
+    private long lastUpdateNanos;
+    private long lastMark;
+    private long lastReport;
+    private boolean inCycle;
+
+    public LoopTimer() {
+        this(null);
+    }
+
+    public LoopTimer(@Nullable NanoClock clock) {
+        this.clock = clock;
+
+        loopHistogram = new LatencyHistogram(WINDOW_SIZE);
+        updateHistogram = new LatencyHistogram(WINDOW_SIZE);
+        for (int i = 0; i < PHASES.length; i++) {
+            phaseHistograms[i] = new LatencyHistogram(WINDOW_SIZE);
+        }
+        lastReport = nanoTime();
+    }
+
+    private long nanoTime() {
+        return clock == null ? System.nanoTime() : Math.round(clock.seconds() * 1e9);
+    }
+
+    public void startCycle() {
+        long now = nanoTime();
+        if (hasCycleStart) {
+            lastLoopNanos = now - cycleStart;
+            loopHistogram.record(lastLoopNanos);
+        }
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = 0;
+        }
+        cycleStart = now;
+        hasCycleStart = true;
+        lastMark = now;
+        inCycle = true;
+    }
+
+    /**
+     * Attributes the time since the previous mark (or the start of the cycle) to {@code phase}.
+     */
+    public void mark(Phase phase) {
+        if (!inCycle) {
+            return;
+        }
+        long now = nanoTime();
+        phaseNanos[phase.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    public void endCycle() {
+        if (!inCycle) {
+            return;
+        }
+        long now = nanoTime();
+        lastUpdateNanos = now - cycleStart;
+        updateHistogram.record(lastUpdateNanos);
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseHistograms[i].record(phaseNanos[i]);
+        }
+        inCycle = false;
+    }
+
+    /**
+     * Returns true (at most once every REPORT_PERIOD seconds) when a summary should be published.
+     */
+    public boolean shouldReport() {
+        long now = nanoTime();
+        if ((now - lastReport) * 1e-9 >= REPORT_PERIOD) {
+            lastReport = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Histogram of the loop period (start of one cycle to the start of the next).
+     */
+    public LatencyHistogram getLoopHistogram() {
+        return loopHistogram;
+    }
+
+    /**
+     * Histogram of the time spent between {@link #startCycle()} and {@link #endCycle()}.
+     */
+    public LatencyHistogram getUpdateHistogram() {
+        return updateHistogram;
+    }
+
+    public LatencyHistogram getPhaseHistogram(Phase phase) {
+        return phaseHistograms[phase.ordinal()];
+    }
+
+    /**
+     * Loop period of the most recent complete loop in nanoseconds (0 before the second cycle).
+     */
+    public long getLastLoopNanos() {
+        return lastLoopNanos;
+    }
+
+    /**
+     * Time spent between {@link #startCycle()} and {@link #endCycle()} in the most recent complete
+     * cycle in nanoseconds.
+     */
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /**
+     * Time spent in {@code phase} during the current (or most recent) cycle in nanoseconds.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+}
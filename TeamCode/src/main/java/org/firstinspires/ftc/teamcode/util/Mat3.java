@@ -0,0 +1,98 @@
+package org.firstinspires.ftc.teamcode.util;
+
+/**
+ * Allocation-free 3x3 matrix operations on row-major {@code double[9]} arrays, for filters that run
+ * in the control loop where creating a RealMatrix per cycle would be too slow. Unless noted
+ * otherwise, the output array must not be one of the inputs.
+ */
+public class Mat3 {
+    private Mat3() {
+    }
+
+    public static void setIdentity(double[] out) {
+        for (int i = 0; i < 9; i++) {
+            out[i] = (i % 4 == 0) ? 1.0 : 0.0;
+        }
+    }
+
+    public static void setDiagonal(double[] out, double a, double b, double c) {
+        for (int i = 0; i < 9; i++) {
+            out[i] = 0.0;
+        }
+        out[0] = a;
+        out[4] = b;
+        out[8] = c;
+    }
+
+    /**
+     * out = a * b
+     */
+    public static void multiply(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                out[3 * i + j] = a[3 * i] * b[j] + a[3 * i + 1] * b[3 + j] + a[3 * i + 2] * b[6 + j];
+            }
+        }
+    }
+
+    /**
+     * out = a * b^T
+     */
+    public static void multiplyTransposed(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                out[3 * i + j] = a[3 * i] * b[3 * j] + a[3 * i + 1] * b[3 * j + 1] + a[3 * i + 2] * b[3 * j + 2];
+            }
+        }
+    }
+
+    /**
+     * out = a + b (out may be a or b)
+     */
+    public static void add(double[] a, double[] b, double[] out) {
+        for (int i = 0; i < 9; i++) {
+            out[i] = a[i] + b[i];
+        }
+    }
+
+    /**
+     * Makes {@code a} exactly symmetric by averaging it with its transpose, which keeps round-off
+     * from accumulating in covariance matrices.
+     */
+    public static void symmetrize(double[] a) {
+        double m01 = 0.5 * (a[1] + a[3]);
+        double m02 = 0.5 * (a[2] + a[6]);
+        double m12 = 0.5 * (a[5] + a[7]);
+        a[1] = a[3] = m01;
+        a[2] = a[6] = m02;
+        a[5] = a[7] = m12;
+    }
+
+    /**
+     * out = a^-1 by cofactor expansion.
+     *
+     * @return false (leaving out unchanged) if a is singular
+     */
+    public static boolean invert(double[] a, double[] out) {
+        double c00 = a[4] * a[8] - a[5] * a[7];
+        double c01 = a[5] * a[6] - a[3] * a[8];
+        double c02 = a[3] * a[7] - a[4] * a[6];
+
+        double det = a[0] * c00 + a[1] * c01 + a[2] * c02;
+        if (Math.abs(det) < 1e-15) {
+            return false;
+        }
+        double invDet = 1.0 / det;
+
+        out[0] = c00 * invDet;
+        out[1] = (a[2] * a[7] - a[1] * a[8]) * invDet;
+        out[2] = (a[1] * a[5] - a[2] * a[4]) * invDet;
+        out[3] = c01 * invDet;
+        out[4] = (a[0] * a[8] - a[2] * a[6]) * invDet;
+        out[5] = (a[2] * a[3] - a[0] * a[5]) * invDet;
+        out[6] = c02 * invDet;
+        out[7] = (a[1] * a[6] - a[0] * a[7]) * invDet;
+        out[8] = (a[0] * a[4] - a[1] * a[3]) * invDet;
+        return true;
+    }
+}
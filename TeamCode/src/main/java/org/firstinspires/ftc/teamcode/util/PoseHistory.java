@@ -0,0 +1,136 @@
+package org.firstinspires.ftc.teamcode.util;
+
+/**
+ * Fixed-capacity ring buffer of timestamped poses stored in parallel primitive arrays. Adding a pose
+ * never allocates once the buffer is full; the oldest pose is overwritten instead. Poses can
+ * optionally be decimated in time so that long runs keep a trail that spans more of the run.
+ */
+public class PoseHistory {
+    private final int capacity;
+
+    private double[] xs;
+    private double[] ys;
+    private double[] headings;
+    private long[] timestamps;
+
+    private int head;
+    private int size;
+
+    private long minIntervalNanos;
+
+    /**
+     * @param capacity maximum number of poses retained or a negative number for an unbounded history
+     *                 (which grows as needed)
+     */
+    public PoseHistory(int capacity) {
+        this.capacity = capacity;
+
+        int initialCapacity = capacity < 0 ? 64 : Math.max(capacity, 1);
+        xs = new double[initialCapacity];
+        ys = new double[initialCapacity];
+        headings = new double[initialCapacity];
+        timestamps = new long[initialCapacity];
+    }
+
+    /**
+     * Only keeps poses that are at least {@code seconds} apart (0 keeps every pose).
+     */
+    public void setMinInterval(double seconds) {
+        minIntervalNanos = (long) (seconds * 1e9);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void grow() {
+        int newLength = 2 * xs.length;
+        double[] newXs = new double[newLength];
+        double[] newYs = new double[newLength];
+        double[] newHeadings = new double[newLength];
+        long[] newTimestamps = new long[newLength];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % xs.length;
+            newXs[i] = xs[index];
+            newYs[i] = ys[index];
+            newHeadings[i] = headings[index];
+            newTimestamps[i] = timestamps[index];
+        }
+        xs = newXs;
+        ys = newYs;
+        headings = newHeadings;
+        timestamps = newTimestamps;
+        head = 0;
+    }
+
+    /**
+     * Appends a pose, overwriting the oldest one if the history is full.
+     *
+     * @return false if the pose was dropped by the time decimation
+     */
+    public boolean add(double x, double y, double heading, long timestampNanos) {
+        if (capacity == 0) {
+            return false;
+        }
+        if (size > 0 && minIntervalNanos > 0
+                && timestampNanos - getTimestampNanos(size - 1) < minIntervalNanos) {
+            return false;
+        }
+
+        if (size == xs.length) {
+            if (capacity < 0) {
+                grow();
+            } else {
+                head = (head + 1) % xs.length;
+                size--;
+            }
+        }
+
+        int index = (head + size) % xs.length;
+        xs[index] = x;
+        ys[index] = y;
+        headings[index] = heading;
+        timestamps[index] = timestampNanos;
+        size++;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    // the accessors below index from the oldest (0) to the newest (size() - 1) pose
+
+    public double getX(int i) {
+        return xs[(head + i) % xs.length];
+    }
+
+    public double getY(int i) {
+        return ys[(head + i) % xs.length];
+    }
+
+    public double getHeading(int i) {
+        return headings[(head + i) % xs.length];
+    }
+
+    public long getTimestampNanos(int i) {
+        return timestamps[(head + i) % xs.length];
+    }
+
+    /**
+     * Copies the x and y coordinates (oldest first) into the provided arrays, which must hold at
+     * least {@link #size()} elements.
+     */
+    public void copyPoints(double[] xPoints, double[] yPoints) {
+        int firstLength = Math.min(size, xs.length - head);
+        System.arraycopy(xs, head, xPoints, 0, firstLength);
+        System.arraycopy(ys, head, yPoints, 0, firstLength);
+        System.arraycopy(xs, 0, xPoints, firstLength, size - firstLength);
+        System.arraycopy(ys, 0, yPoints, firstLength, size - firstLength);
+    }
+}
@@ -0,0 +1,76 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+/**
+ * Lock-free single-writer slot for a drive's pose estimate, published by the control thread after
+ * every update. Like {@link AsyncImuSampler}, it's a sequence lock over primitive fields, so
+ * publishing doesn't allocate and readers on any thread copy a consistent pose, velocity, and
+ * timestamp into their own array without blocking the writer. {@link #read()} builds a
+ * {@link PoseRecord} for readers that don't mind allocating.
+ */
+public class PosePublisher {
+    /**
+     * Length of the arrays filled by {@link #read(double[])}: x, y, heading, and the robot-frame
+     * x, y, and heading velocities (NaN if the localizer doesn't provide a velocity).
+     */
+    public static final int SIZE = 6;
+
+    // sequence lock: the sequence is odd while the writer is updating the slot
+    private volatile long sequence;
+    private volatile double x, y, heading;
+    private volatile double xVelocity, yVelocity, headingVelocity;
+    private volatile long timestampNanos;
+
+    /**
+     * Publishes {@code pose} (x, y, heading) and {@code velocity} (null if unavailable); only call
+     * this from one thread.
+     *
+     * @param timestampNanos System.nanoTime() when the sensor readings the estimate is based on
+     *                       were taken
+     */
+    public void publish(double[] pose, @Nullable double[] velocity, long timestampNanos) {
+        sequence++;
+        x = pose[0];
+        y = pose[1];
+        heading = pose[2];
+        xVelocity = velocity != null ? velocity[0] : Double.NaN;
+        yVelocity = velocity != null ? velocity[1] : Double.NaN;
+        headingVelocity = velocity != null ? velocity[2] : Double.NaN;
+        this.timestampNanos = timestampNanos;
+        sequence++;
+    }
+
+    /**
+     * Copies the most recently published estimate into {@code out} (at least {@link #SIZE} long).
+     *
+     * @return the timestamp of the estimate (System.nanoTime() base)
+     */
+    public long read(double[] out) {
+        long before, after, timestamp;
+        do {
+            before = sequence;
+            out[0] = x;
+            out[1] = y;
+            out[2] = heading;
+            out[3] = xVelocity;
+            out[4] = yVelocity;
+            out[5] = headingVelocity;
+            timestamp = timestampNanos;
+            after = sequence;
+        } while ((before & 1) != 0 || before != after);
+        return timestamp;
+    }
+
+    /**
+     * Returns the most recently published estimate as a new record.
+     */
+    public PoseRecord read() {
+        double[] values = new double[SIZE];
+        long timestamp = read(values);
+        Pose2d velocity = Double.isNaN(values[3]) ? null : new Pose2d(values[3], values[4], values[5]);
+        return new PoseRecord(new Pose2d(values[0], values[1], values[2]), velocity, timestamp);
+    }
+}
@@ -0,0 +1,48 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+
+/**
+ * Immutable copy of the pose estimate a drive publishes after each update. Drives publish through a
+ * {@link PosePublisher} and only build records on demand, so any number of threads (vision,
+ * subsystem logic) can read a consistent pose, velocity, and timestamp without locking or slowing
+ * down the control loop.
+ */
+public final class PoseRecord {
+    private final Pose2d pose;
+    private final @Nullable Pose2d velocity;
+    private final long timestampNanos;
+
+    public PoseRecord(Pose2d pose, @Nullable Pose2d velocity, long timestampNanos) {
+        this.pose = pose;
+        this.velocity = velocity;
+        this.timestampNanos = timestampNanos;
+    }
+
+    public Pose2d getPose() {
+        return pose;
+    }
+
+    /**
+     * Robot-frame velocity (null if the localizer doesn't provide one).
+     */
+    public @Nullable Pose2d getVelocity() {
+        return velocity;
+    }
+
+    /**
+     * System.nanoTime() when the sensor readings the estimate is based on were taken.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * Age of the estimate in seconds.
+     */
+    public double getAge() {
+        return (System.nanoTime() - timestampNanos) * 1e-9;
+    }
+}
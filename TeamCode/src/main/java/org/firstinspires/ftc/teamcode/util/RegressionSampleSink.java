@@ -0,0 +1,122 @@
+package org.firstinspires.ftc.teamcode.util;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+
+/**
+ * Collects (time, position, power) samples for the feedforward regressions in growable primitive
+ * arrays and, if a file is given, streams them to a CSV log as they are added. The log is written
+ * through a large buffer on top of a {@link java.nio.channels.FileChannel}, so long or densely
+ * sampled runs neither hold boxed samples on the heap nor stall at the end writing the whole log.
+ *
+ * Call {@link #close()} once sampling is done to flush the log.
+ */
+public class RegressionSampleSink implements Closeable {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024; // chars
+
+    private double[] timeSamples = new double[INITIAL_CAPACITY];
+    private double[] positionSamples = new double[INITIAL_CAPACITY];
+    private double[] powerSamples = new double[INITIAL_CAPACITY];
+    private int size;
+
+    private Writer writer;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param file CSV log file or null to only keep the samples in memory
+     */
+    public RegressionSampleSink(@Nullable File file) {
+        if (file != null) {
+            try {
+                writer = new BufferedWriter(Channels.newWriter(
+                        new FileOutputStream(file).getChannel(), "UTF-8"), WRITE_BUFFER_SIZE);
+                writer.write("time,position,power\n");
+            } catch (FileNotFoundException e) {
+                // ignore
+                writer = null;
+            } catch (IOException e) {
+                closeWriter();
+            }
+        }
+    }
+
+    private void grow() {
+        int newLength = 2 * timeSamples.length;
+        double[] newTimeSamples = new double[newLength];
+        double[] newPositionSamples = new double[newLength];
+        double[] newPowerSamples = new double[newLength];
+        System.arraycopy(timeSamples, 0, newTimeSamples, 0, size);
+        System.arraycopy(positionSamples, 0, newPositionSamples, 0, size);
+        System.arraycopy(powerSamples, 0, newPowerSamples, 0, size);
+        timeSamples = newTimeSamples;
+        positionSamples = newPositionSamples;
+        powerSamples = newPowerSamples;
+    }
+
+    public void add(double time, double position, double power) {
+        if (size == timeSamples.length) {
+            grow();
+        }
+        timeSamples[size] = time;
+        positionSamples[size] = position;
+        powerSamples[size] = power;
+        size++;
+
+        if (writer != null) {
+            line.setLength(0);
+            line.append(time).append(',').append(position).append(',').append(power).append('\n');
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                // keep sampling without the log
+                closeWriter();
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the arrays below are the backing storage; only the first size() elements are valid
+
+    public double[] getTimeSamples() {
+        return timeSamples;
+    }
+
+    public double[] getPositionSamples() {
+        return positionSamples;
+    }
+
+    public double[] getPowerSamples() {
+        return powerSamples;
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Flushes and closes the log file. Samples remain available for the regressions.
+     */
+    @Override
+    public void close() {
+        closeWriter();
+    }
+}
@@ -1,17 +1,9 @@
 package org.firstinspires.ftc.teamcode.util;
 
-import androidx.annotation.Nullable;
-
 import com.acmerobotics.roadrunner.kinematics.Kinematics;
 
 import org.apache.commons.math3.stat.regression.SimpleRegression;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Various regression utilities.
  */
@@ -43,24 +35,25 @@ public class RegressionUtil {
     }
 
     /**
-     * Numerically compute dy/dx from the given x and y values. The returned list is padded to match
-     * the length of the original sequences.
+     * Numerically compute dy/dx from the first n x and y values. The returned array is padded to
+     * match the length of the original sequences.
      *
      * @param x x-values
      * @param y y-values
+     * @param n number of samples
      * @return derivative values
      */
-    private static List<Double> numericalDerivative(List<Double> x, List<Double> y) {
-        List<Double> deriv = new ArrayList<>(x.size());
-        for (int i = 1; i < x.size() - 1; i++) {
-            deriv.add(
-                    (y.get(i + 1) - y.get(i - 1)) /
-                    (x.get(i + 1) - x.get(i - 1))
-            );
+    private static double[] numericalDerivative(double[] x, double[] y, int n) {
+        double[] deriv = new double[n];
+        if (n < 3) {
+            return deriv;
+        }
+        for (int i = 1; i < n - 1; i++) {
+            deriv[i] = (y[i + 1] - y[i - 1]) / (x[i + 1] - x[i - 1]);
         }
         // copy endpoints to pad output
-        deriv.add(0, deriv.get(0));
-        deriv.add(deriv.get(deriv.size() - 1));
+        deriv[0] = deriv[1];
+        deriv[n - 1] = deriv[n - 2];
         return deriv;
     }
 
@@ -72,37 +65,19 @@ public class RegressionUtil {
      *   2. Run a linear regression on the encoder velocity vs. motor power plot to obtain a slope
      *      (kV) and an optional intercept (kStatic).
      *
-     * @param timeSamples time samples
-     * @param positionSamples position samples
-     * @param powerSamples power samples
+     * @param samples time, position, and power samples
      * @param fitStatic fit kStatic
-     * @param file log file
      */
-    public static RampResult fitRampData(List<Double> timeSamples, List<Double> positionSamples,
-                                         List<Double> powerSamples, boolean fitStatic,
-                                         @Nullable File file) {
-        if (file != null) {
-            try (PrintWriter pw = new PrintWriter(file)) {
-                pw.println("time,position,power");
-                for (int i = 0; i < timeSamples.size(); i++) {
-                    double time = timeSamples.get(i);
-                    double pos = positionSamples.get(i);
-                    double power = powerSamples.get(i);
-                    pw.println(time + "," + pos + "," + power);
-                }
-            } catch (FileNotFoundException e) {
-                // ignore
-            }
-        }
+    public static RampResult fitRampData(RegressionSampleSink samples, boolean fitStatic) {
+        int n = samples.size();
+        double[] timeSamples = samples.getTimeSamples();
+        double[] powerSamples = samples.getPowerSamples();
 
-        List<Double> velSamples = numericalDerivative(timeSamples, positionSamples);
+        double[] velSamples = numericalDerivative(timeSamples, samples.getPositionSamples(), n);
 
         SimpleRegression rampReg = new SimpleRegression(fitStatic);
-        for (int i = 0; i < timeSamples.size(); i++) {
-            double vel = velSamples.get(i);
-            double power = powerSamples.get(i);
-
-            rampReg.addData(vel, power);
+        for (int i = 0; i < n; i++) {
+            rampReg.addData(velSamples[i], powerSamples[i]);
         }
 
         return new RampResult(Math.abs(rampReg.getSlope()), Math.abs(rampReg.getIntercept()),
@@ -112,37 +87,22 @@ public class RegressionUtil {
     /**
      * Run regression to compute acceleration feedforward.
      *
-     * @param timeSamples time samples
-     * @param positionSamples position samples
-     * @param powerSamples power samples
+     * @param samples time, position, and power samples
      * @param rampResult ramp result
-     * @param file log file
      */
-    public static AccelResult fitAccelData(List<Double> timeSamples, List<Double> positionSamples,
-                                           List<Double> powerSamples, RampResult rampResult,
-                                           @Nullable File file) {
-        if (file != null) {
-            try (PrintWriter pw = new PrintWriter(file)) {
-                pw.println("time,position,power");
-                for (int i = 0; i < timeSamples.size(); i++) {
-                    double time = timeSamples.get(i);
-                    double pos = positionSamples.get(i);
-                    double power = powerSamples.get(i);
-                    pw.println(time + "," + pos + "," + power);
-                }
-            } catch (FileNotFoundException e) {
-                // ignore
-            }
-        }
+    public static AccelResult fitAccelData(RegressionSampleSink samples, RampResult rampResult) {
+        int n = samples.size();
+        double[] timeSamples = samples.getTimeSamples();
+        double[] powerSamples = samples.getPowerSamples();
 
-        List<Double> velSamples = numericalDerivative(timeSamples, positionSamples);
-        List<Double> accelSamples = numericalDerivative(timeSamples, velSamples);
+        double[] velSamples = numericalDerivative(timeSamples, samples.getPositionSamples(), n);
+        double[] accelSamples = numericalDerivative(timeSamples, velSamples, n);
 
         SimpleRegression accelReg = new SimpleRegression(false);
-        for (int i = 0; i < timeSamples.size(); i++) {
-            double vel = velSamples.get(i);
-            double accel = accelSamples.get(i);
-            double power = powerSamples.get(i);
+        for (int i = 0; i < n; i++) {
+            double vel = velSamples[i];
+            double accel = accelSamples[i];
+            double power = powerSamples[i];
 
             double powerFromVel = Kinematics.calculateMotorFeedforward(
                     vel, 0.0, rampResult.kV, 0.0, rampResult.kStatic);
@@ -0,0 +1,146 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import org.firstinspires.ftc.teamcode.drive.MecanumWheelLocalizer;
+import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
+import org.firstinspires.ftc.teamcode.drive.StandardTrackingWheelLocalizer;
+import org.firstinspires.ftc.teamcode.util.Encoder;
+import org.firstinspires.ftc.teamcode.util.HardwareSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the control cycle doesn't allocate in steady state, using the JVM's per-thread
+ * allocation counter. Each cycle steps the simulator and captures the hardware snapshot like
+ * SampleMecanumDrive.update() does. LocalizerAllocationTest is the on-robot cross-check.
+ */
+public class SimulatedAllocationTest {
+    private static final double STEP = 0.01; // s
+    private static final int WARMUP_CYCLES = 2000;
+    private static final int CYCLES = 10000;
+
+    /**
+     * Tracking wheel encoder that reads one of the simulated drive wheels from the snapshot.
+     */
+    private static class SimulatedEncoder extends Encoder {
+        private final HardwareSnapshot snapshot;
+        private final int wheel;
+
+        SimulatedEncoder(HardwareSnapshot snapshot, int wheel) {
+            super(snapshot.getEncoderClock());
+            this.snapshot = snapshot;
+            this.wheel = wheel;
+        }
+
+        @Override
+        protected int readRawPosition() {
+            return snapshot.getEncoderPosition(wheel);
+        }
+
+        @Override
+        protected double readRawVelocity() {
+            return snapshot.getEncoderVelocity(wheel);
+        }
+    }
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    private MecanumDriveSimulator simulator;
+    private SampleMecanumDrive drive;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        simulator = new MecanumDriveSimulator();
+        drive = new SampleMecanumDrive(simulator);
+    }
+
+    @After
+    public void tearDown() {
+        if (drive != null) {
+            drive.stop();
+        }
+    }
+
+    private long getAllocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs {@code cycle} after a warm up and returns the bytes it allocated per cycle.
+     */
+    private double measureBytesPerCycle(Runnable cycle) {
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            cycle.run();
+        }
+
+        // reading the counter may allocate by itself
+        long overhead = -getAllocatedBytes() + getAllocatedBytes();
+
+        long start = getAllocatedBytes();
+        for (int i = 0; i < CYCLES; i++) {
+            cycle.run();
+        }
+        long bytes = getAllocatedBytes() - start - overhead;
+
+        return (double) bytes / CYCLES;
+    }
+
+    private void driveInCircles() {
+        simulator.setMotorPower(0, 0.6);
+        simulator.setMotorPower(1, 0.6);
+        simulator.setMotorPower(2, 0.4);
+        simulator.setMotorPower(3, 0.4);
+    }
+
+    private static void assertNoAllocations(double bytesPerCycle) {
+        // any allocation is at least 16 bytes, so this only tolerates one-off noise
+        assertTrue("allocated " + bytesPerCycle + " bytes per cycle", bytesPerCycle < 1.0);
+    }
+
+    @Test
+    public void mecanumWheelLocalizerDoesNotAllocate() {
+        MecanumWheelLocalizer localizer = new MecanumWheelLocalizer(drive);
+        driveInCircles();
+
+        assertNoAllocations(measureBytesPerCycle(() -> {
+            simulator.step(STEP);
+            drive.captureHardwareSnapshot();
+            localizer.update();
+        }));
+    }
+
+    @Test
+    public void trackingWheelLocalizerDoesNotAllocate() {
+        HardwareSnapshot snapshot = drive.getHardwareSnapshot();
+        StandardTrackingWheelLocalizer localizer = new StandardTrackingWheelLocalizer(
+                new SimulatedEncoder(snapshot, 0), new SimulatedEncoder(snapshot, 3),
+                new SimulatedEncoder(snapshot, 1), snapshot);
+        driveInCircles();
+
+        assertNoAllocations(measureBytesPerCycle(() -> {
+            simulator.step(STEP);
+            drive.captureHardwareSnapshot();
+            localizer.update();
+        }));
+    }
+
+    @Test
+    public void idleDriveUpdateDoesNotAllocate() {
+        // while following, the runner and Road Runner's followers allocate Pose2d and DriveSignal
+        // objects by design; an idle update (snapshot, localization, publishing, timing) must not
+        assertNoAllocations(measureBytesPerCycle(() -> {
+            simulator.step(STEP);
+            drive.update();
+        }));
+    }
+}
@@ -0,0 +1,66 @@
+package org.firstinspires.ftc.teamcode.drive.sim;
+
+import com.acmerobotics.roadrunner.geometry.Pose2d;
+import com.acmerobotics.roadrunner.util.Angle;
+
+import org.firstinspires.ftc.teamcode.drive.SampleMecanumDrive;
+import org.firstinspires.ftc.teamcode.trajectorysequence.TrajectorySequence;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Runs SampleMecanumDrive against the simulator on the JVM, without any hardware.
+ */
+public class SimulatedDriveTest {
+    private static final double STEP = 0.01; // s
+
+    private static Pose2d runSequence() {
+        MecanumDriveSimulator simulator = new MecanumDriveSimulator();
+        SampleMecanumDrive drive = new SampleMecanumDrive(simulator);
+
+        try {
+            Pose2d startPose = new Pose2d(0, 0, 0);
+            drive.setPoseEstimate(startPose);
+
+            TrajectorySequence sequence = drive.trajectorySequenceBuilder(startPose)
+                    .forward(24)
+                    .turn(Math.toRadians(90))
+                    .strafeRight(12)
+                    .build();
+
+            drive.followTrajectorySequenceAsync(sequence);
+
+            double timeout = sequence.duration() + 2.0;
+            while (drive.isBusy() && simulator.getClock().seconds() < timeout) {
+                drive.update();
+                simulator.step(STEP);
+            }
+
+            assertFalse("sequence didn't finish", drive.isBusy());
+
+            return sequence.end().minus(simulator.getPose());
+        } finally {
+            drive.stop();
+        }
+    }
+
+    @Test
+    public void followsSequenceWithinTolerance() {
+        Pose2d error = runSequence();
+
+        assertEquals(0.0, error.vec().norm(), 1.0);
+        assertEquals(0.0, Angle.normDelta(error.getHeading()), Math.toRadians(3.0));
+    }
+
+    @Test
+    public void runsAreDeterministic() {
+        Pose2d first = runSequence();
+        Pose2d second = runSequence();
+
+        assertEquals(first.getX(), second.getX(), 0.0);
+        assertEquals(first.getY(), second.getY(), 0.0);
+        assertEquals(first.getHeading(), second.getHeading(), 0.0);
+    }
+}
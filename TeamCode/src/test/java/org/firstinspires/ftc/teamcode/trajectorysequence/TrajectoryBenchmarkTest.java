@@ -0,0 +1,53 @@
+package org.firstinspires.ftc.teamcode.trajectorysequence;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs {@link TrajectorySequenceBenchmark} on the JVM so results can be tracked in CI. It's skipped
+ * unless the benchmark property is set:
+ * <pre>
+ *   ./gradlew :TeamCode:testDebugUnitTest -Pbenchmark --tests '*TrajectoryBenchmarkTest'
+ * </pre>
+ * It benchmarks both full and incremental builds (see TrajectorySequenceBuilder.setIncremental());
+ * the results are printed and written to build/benchmarks/TrajectoryBenchmark-{full,incremental}.csv.
+ */
+public class TrajectoryBenchmarkTest {
+    private static final int MAX_SPLINES = 32;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+    private static final int GET_SAMPLES = 1000; // per iteration
+
+    @Test
+    public void benchmarkSequenceBuilding() throws FileNotFoundException {
+        assumeTrue("set -Pbenchmark to run the benchmarks", Boolean.getBoolean("benchmark"));
+
+        File folder = new File("build/benchmarks");
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+
+        for (boolean incremental : new boolean[] {false, true}) {
+            String name = incremental ? "incremental" : "full";
+            TrajectorySequenceBenchmark benchmark = new TrajectorySequenceBenchmark(
+                    WARMUP_ITERATIONS, ITERATIONS, GET_SAMPLES, incremental);
+
+            StringBuilder csv = new StringBuilder(TrajectorySequenceBenchmark.CSV_HEADER).append('\n');
+            System.out.println(name + " build:");
+            for (int splines = 1; splines <= MAX_SPLINES; splines *= 2) {
+                TrajectorySequenceBenchmark.Result result = benchmark.run(splines);
+                System.out.println("  " + result.getSummary());
+                result.appendCsv(csv);
+            }
+            System.out.println("  checksum " + benchmark.getChecksum());
+
+            try (PrintWriter pw = new PrintWriter(new File(folder, "TrajectoryBenchmark-" + name + ".csv"))) {
+                pw.print(csv);
+            }
+        }
+    }
+}